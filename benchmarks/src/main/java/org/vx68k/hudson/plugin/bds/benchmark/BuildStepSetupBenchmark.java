@@ -0,0 +1,186 @@
+/*
+ * BuildStepSetupBenchmark
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds.benchmark;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.remoting.VirtualChannel;
+import hudson.tools.ToolProperty;
+import hudson.util.ArgumentListBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vx68k.hudson.plugin.bds.BDSBuilder;
+import org.vx68k.hudson.plugin.bds.BDSInstallation;
+
+/**
+ * Benchmarks for the work done by {@link BDSBuilder} before MSBuild starts.
+ * Only the parts which do not need a running Hudson instance are covered;
+ * node-specific translation in {@link BDSInstallation#forNode} consults the
+ * tool location translators of Hudson and is therefore excluded.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BuildStepSetupBenchmark {
+
+    private static final String OPTIONS =
+            "/t:Build /p:Config=${CONFIG} /p:Platform=${PLATFORM} "
+            + "/p:DCC_Define=${DEFINES} /v:minimal /nologo";
+
+    private static final String PROJECT_FILE = "${PROJECT}.groupproj";
+
+    private static final List<ToolProperty<?>> NO_PROPERTIES =
+            Collections.<ToolProperty<?>>emptyList();
+
+    /**
+     * Number of the configured RAD Studio installations.
+     */
+    @Param({"1", "8", "32"})
+    private int installationCount;
+
+    private BDSInstallation[] installations;
+
+    private Map<String, BDSInstallation> index;
+
+    private org.vx68k.jenkins.plugin.bds.BDSInstallation[] legacyInstallations;
+
+    private String lastName;
+
+    private BDSInstallation installation;
+
+    private EnvVars environment;
+
+    private ExposedBuilder builder;
+
+    private FilePath msbuildPath;
+
+    @Setup
+    public void setUp() {
+        installations = new BDSInstallation[installationCount];
+        legacyInstallations =
+                new org.vx68k.jenkins.plugin.bds.BDSInstallation[
+                        installationCount];
+        for (int i = 0; i != installationCount; i += 1) {
+            String name = "RAD Studio " + i;
+            String home = "${PROGRAMFILES}\\Embarcadero\\Studio\\" + i + ".0";
+            installations[i] =
+                    new BDSInstallation(name, home, NO_PROPERTIES);
+            legacyInstallations[i] =
+                    new org.vx68k.jenkins.plugin.bds.BDSInstallation(
+                            name, home, NO_PROPERTIES);
+            lastName = name;
+        }
+        installation = installations[installationCount - 1];
+        index = ExposedInstallation.indexByName(installations);
+
+        environment = new EnvVars();
+        // A typical Windows environment has several dozen variables.
+        for (int i = 0; i != 50; i += 1) {
+            environment.put("VARIABLE" + i, "value" + i);
+        }
+        environment.put("PROGRAMFILES", "C:\\Program Files (x86)");
+        environment.put("CONFIG", "Release");
+        environment.put("PLATFORM", "Win32");
+        environment.put("DEFINES", "RELEASE;NDEBUG");
+        environment.put("PROJECT", "ProjectGroup1");
+
+        builder = new ExposedBuilder(PROJECT_FILE, OPTIONS, lastName);
+        msbuildPath = new FilePath((VirtualChannel) null,
+                "C:\\Windows\\Microsoft.NET\\Framework\\v3.5\\MSBuild.exe");
+    }
+
+    @Benchmark
+    public BDSInstallation getInstallation() {
+        return index.get(lastName);
+    }
+
+    @Benchmark
+    public BDSInstallation[] migrateLegacyInstallations() {
+        BDSInstallation[] converted =
+                new BDSInstallation[legacyInstallations.length];
+        for (int i = 0; i != converted.length; i += 1) {
+            converted[i] = legacyInstallations[i].convert();
+        }
+        return converted;
+    }
+
+    @Benchmark
+    public BDSInstallation forEnvironment() {
+        return installation.forEnvironment(environment);
+    }
+
+    @Benchmark
+    public List<String> getArguments() {
+        return builder.getArguments(msbuildPath, environment).toList();
+    }
+
+    /**
+     * {@link BDSInstallation} subclass to expose the index by name, which is
+     * what {@link BDSInstallation.Descriptor#getInstallation} reads.
+     */
+    private static final class ExposedInstallation extends BDSInstallation {
+
+        private static final long serialVersionUID = 1L;
+
+        private ExposedInstallation() {
+            super(null, null, NO_PROPERTIES);
+        }
+
+        static Map<String, BDSInstallation> indexByName(
+                BDSInstallation[] installations) {
+            return BDSInstallation.index(installations);
+        }
+    }
+
+    /**
+     * {@link BDSBuilder} subclass to expose the argument builder.
+     */
+    private static final class ExposedBuilder extends BDSBuilder {
+
+        ExposedBuilder(String projectFile, String options,
+                String installationName) {
+            super(projectFile, options, installationName);
+        }
+
+        @Override
+        protected ArgumentListBuilder getArguments(FilePath msbuildPath,
+                EnvVars env) {
+            return super.getArguments(msbuildPath, env);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * PatternVariablesReader
+ * Copyright (C) 2014-2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Regular-expression based reader of RAD Studio environment variables as in
+ * version 4.0 and earlier.  This class is kept only as a baseline.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class PatternVariablesReader {
+
+    /**
+     * Pattern to match a <code>set</code> command.
+     */
+    private static final Pattern SET_COMMAND_PATTERN =
+            Pattern.compile("\\s*@?set\\s+([^=]+)=(.*)",
+                    Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Read RAD Studio environment variables from an input stream.
+     *
+     * @param stream input stream
+     * @return environment variables read from the input stream
+     * @throws IOException if an I/O exception has occurred
+     */
+    public static Map<String, String> readVariables(InputStream stream)
+            throws IOException {
+        Map<String, String> variables = new TreeMap<String, String>(
+                String.CASE_INSENSITIVE_ORDER);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                stream, "ISO-8859-1"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Matcher setCommand = SET_COMMAND_PATTERN.matcher(line);
+                if (setCommand.matches()) {
+                    String key = setCommand.group(1);
+                    String value = setCommand.group(2);
+                    if (key.startsWith("BDS") || key.startsWith("CG_") ||
+                            key.startsWith("Framework")) {
+                        variables.put(key, value);
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        if (!variables.containsKey("BDSINCLUDE")) {
+            variables.put("BDSINCLUDE", variables.get("BDS")
+                    + "\\include");
+        }
+        return variables;
+    }
+}
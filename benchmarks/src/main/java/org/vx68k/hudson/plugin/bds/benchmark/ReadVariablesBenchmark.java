@@ -0,0 +1,105 @@
+/*
+ * ReadVariablesBenchmark
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vx68k.hudson.plugin.bds.BDSUtilities;
+
+/**
+ * Benchmarks for reading RAD Studio environment variables from batch files
+ * of several RAD Studio versions.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReadVariablesBenchmark {
+
+    private static final String ENCODING = "ISO-8859-1";
+
+    @Param({"rsvars-xe.bat", "rsvars-xe5.bat", "rsvars-10-seattle.bat",
+            "rsvars-10.2-tokyo.bat"})
+    private String batchFile;
+
+    private byte[] content;
+
+    @Setup
+    public void setUp() throws IOException {
+        content = readResource(batchFile);
+    }
+
+    /**
+     * Reads a resource into a byte array.
+     *
+     * @param name name of the resource
+     * @return content of the resource
+     * @throws IOException if an I/O exception has occurred
+     */
+    static byte[] readResource(String name) throws IOException {
+        InputStream stream =
+                ReadVariablesBenchmark.class.getResourceAsStream(name);
+        if (stream == null) {
+            throw new IOException("Resource not found: " + name);
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = stream.read(buffer)) >= 0) {
+                bytes.write(buffer, 0, n);
+            }
+            return bytes.toByteArray();
+        } finally {
+            stream.close();
+        }
+    }
+
+    @Benchmark
+    public Map<String, String> pattern() throws IOException {
+        return PatternVariablesReader.readVariables(
+                new ByteArrayInputStream(content));
+    }
+
+    @Benchmark
+    public Map<String, String> parser() throws IOException {
+        return BDSUtilities.readVariables(
+                new ByteArrayInputStream(content), ENCODING);
+    }
+}
@@ -0,0 +1,10 @@
+@SET BDS=C:\Program Files (x86)\Embarcadero\Studio\19.0
+@SET BDSINCLUDE=C:\Program Files (x86)\Embarcadero\Studio\19.0\include
+@SET BDSCOMMONDIR=C:\Users\Public\Documents\Embarcadero\Studio\19.0
+@SET FrameworkDir=C:\Windows\Microsoft.NET\Framework\v4.0.30319
+@SET FrameworkVersion=v4.0.30319
+@SET FrameworkSDKDir=
+@SET PATH=%FrameworkDir%;%FrameworkSDKDir%;C:\Program Files (x86)\Embarcadero\Studio\19.0\bin;C:\Program Files (x86)\Embarcadero\Studio\19.0\bin64;%PATH%
+@SET LANGDIR=EN
+@SET PLATFORM=
+@SET PlatformSDK=
@@ -0,0 +1,7 @@
+@SET BDS=C:\Program Files (x86)\Embarcadero\RAD Studio\8.0
+@SET BDSCOMMONDIR=C:\Users\Public\Documents\RAD Studio\8.0
+@SET FrameworkDir=C:\Windows\Microsoft.NET\Framework\v2.0.50727
+@SET FrameworkVersion=v2.0.50727
+@SET FrameworkSDKDir=
+@SET PATH=%FrameworkDir%;%FrameworkSDKDir%;C:\Program Files (x86)\Embarcadero\RAD Studio\8.0\bin;C:\Program Files (x86)\Embarcadero\RAD Studio\8.0\bin64;%PATH%
+@SET LANGDIR=EN
@@ -19,16 +19,31 @@
 package org.vx68k.hudson.plugin.bds;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.TreeMap;
 import hudson.EnvVars;
 import hudson.FilePath;
 import hudson.Launcher;
 import hudson.Proc;
 import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.Action;
 import hudson.model.BuildListener;
 import hudson.remoting.VirtualChannel;
 import hudson.tasks.Builder;
 import hudson.util.ArgumentListBuilder;
+import org.vx68k.hudson.plugin.bds.resources.Messages;
 
 /**
  * Abstract builder for MSBuild projects.
@@ -43,8 +58,33 @@ public abstract class AbstractMsbuildBuilder extends Builder {
      */
     protected static final String MSBUILD_FILE_NAME = "MSBuild.exe";
 
+    /**
+     * Name of the phase to get the build environment.
+     */
+    protected static final String PHASE_ENVIRONMENT = "environment";
+
+    /**
+     * Name of the phase to build additional environment variables.
+     */
+    protected static final String PHASE_VARIABLES = "variables";
+
+    /**
+     * Name of the phase to prepare and start MSBuild processes.
+     */
+    protected static final String PHASE_START = "start";
+
+    /**
+     * Name of the phase to wait for the MSBuild process.
+     */
+    protected static final String PHASE_MSBUILD = "msbuild";
+
     private final String projectFile;
     private final String options;
+    private final int timeout;
+    private final MsbuildParallelOptions parallelOptions;
+    private final MsbuildMatrixOptions matrixOptions;
+    private final MsbuildReuseOptions reuseOptions;
+    private final MsbuildLogOptions logOptions;
 
     /**
      * Constructs this object and Sets the immutable properties.
@@ -53,8 +93,50 @@ public abstract class AbstractMsbuildBuilder extends Builder {
      * @param options command-line options
      */
     protected AbstractMsbuildBuilder(String projectFile, String options) {
+        this(projectFile, options, 0, null, null, null, null);
+    }
+
+    /**
+     * Constructs this object and Sets the immutable properties including
+     * the groups of options for multiple project files.
+     *
+     * @param projectFile names or wildcard patterns of MSBuild project files,
+     * one per line
+     * @param options command-line options
+     * @param timeout minutes after which the build step is aborted, or zero
+     * for no timeout
+     * @param parallelOptions options to run MSBuild processes in parallel,
+     * or <code>null</code> for the defaults
+     * @param matrixOptions options to build the projects in a matrix of
+     * platforms and configurations, or <code>null</code> for the defaults
+     * @param reuseOptions options to reuse the results of earlier builds
+     * and build steps, or <code>null</code> for the defaults
+     * @param logOptions options for the output of MSBuild, or
+     * <code>null</code> for the defaults
+     */
+    protected AbstractMsbuildBuilder(String projectFile, String options,
+            int timeout, MsbuildParallelOptions parallelOptions,
+            MsbuildMatrixOptions matrixOptions,
+            MsbuildReuseOptions reuseOptions, MsbuildLogOptions logOptions) {
+        if (parallelOptions == null) {
+            parallelOptions = new MsbuildParallelOptions();
+        }
+        if (matrixOptions == null) {
+            matrixOptions = new MsbuildMatrixOptions();
+        }
+        if (reuseOptions == null) {
+            reuseOptions = new MsbuildReuseOptions();
+        }
+        if (logOptions == null) {
+            logOptions = new MsbuildLogOptions();
+        }
         this.projectFile = projectFile;
         this.options = options;
+        this.timeout = timeout;
+        this.parallelOptions = parallelOptions;
+        this.matrixOptions = matrixOptions;
+        this.reuseOptions = reuseOptions;
+        this.logOptions = logOptions;
     }
 
     /**
@@ -75,6 +157,205 @@ public abstract class AbstractMsbuildBuilder extends Builder {
         return options;
     }
 
+    /**
+     * Returns the minutes after which the build step is aborted.
+     *
+     * @return timeout in minutes, or zero for no timeout
+     */
+    public int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Returns the options to run MSBuild processes in parallel.
+     *
+     * @return options to run MSBuild processes in parallel
+     */
+    public MsbuildParallelOptions getParallelOptions() {
+        return parallelOptions;
+    }
+
+    /**
+     * Returns the options to build the projects in a matrix of platforms
+     * and configurations.
+     *
+     * @return options for the matrix
+     */
+    public MsbuildMatrixOptions getMatrixOptions() {
+        return matrixOptions;
+    }
+
+    /**
+     * Returns the options to reuse the results of earlier builds and build
+     * steps.
+     *
+     * @return options for reuse
+     */
+    public MsbuildReuseOptions getReuseOptions() {
+        return reuseOptions;
+    }
+
+    /**
+     * Returns the options for the output of MSBuild.
+     *
+     * @return options for the output
+     */
+    public MsbuildLogOptions getLogOptions() {
+        return logOptions;
+    }
+
+    /**
+     * Returns the cells of the matrix of platforms and configurations to
+     * build the projects in.
+     *
+     * @param env environment variables to expand the platforms and the
+     * configurations
+     * @return list of the cells, which is empty if neither platforms nor
+     * configurations are given
+     */
+    protected List<MsbuildMatrixCell> getMatrixCells(EnvVars env) {
+        String platforms = matrixOptions.getPlatforms();
+        String configurations = matrixOptions.getConfigurations();
+        String expandedPlatforms = null;
+        if (platforms != null) {
+            expandedPlatforms = env.expand(platforms);
+        }
+        String expandedConfigurations = null;
+        if (configurations != null) {
+            expandedConfigurations = env.expand(configurations);
+        }
+        return MsbuildMatrixCell.expand(expandedPlatforms,
+                expandedConfigurations);
+    }
+
+    /**
+     * Returns the dependencies of projects in the cells of a matrix.  Each
+     * cell of a project depends on the same cell of the projects on which
+     * the project depends.
+     *
+     * @param dependencies map from project files to those on which they
+     * depend
+     * @param cells cells of the matrix
+     * @return map from labels to those on which they depend
+     */
+    protected static Map<String, List<String>> getMatrixDependencies(
+            Map<String, List<String>> dependencies,
+            List<MsbuildMatrixCell> cells) {
+        Map<String, List<String>> expanded =
+                new HashMap<String, List<String>>();
+        for (Map.Entry<String, List<String>> entry : dependencies.entrySet()) {
+            for (MsbuildMatrixCell cell : cells) {
+                List<String> labels = new ArrayList<String>();
+                for (String dependency : entry.getValue()) {
+                    labels.add(cell.getLabel(dependency));
+                }
+                expanded.put(cell.getLabel(entry.getKey()), labels);
+            }
+        }
+        return expanded;
+    }
+
+    /**
+     * Returns the key under which the environment resolved for this build
+     * step is shared with the other build steps of the same build.  Build
+     * steps with the same key must build the same environment.
+     *
+     * @return key of the environment
+     */
+    protected String getEnvironmentKey() {
+        return getClass().getName();
+    }
+
+    /**
+     * Parses a partition.
+     *
+     * @param partition partition such as <code>2/4</code>
+     * @return array of the one-based index and the number of partitions, or
+     * <code>null</code> if the partition is not valid
+     */
+    protected static int[] parsePartition(String partition) {
+        String[] parts = partition.trim().split("\\s*/\\s*");
+        if (parts.length != 2) {
+            return null;
+        }
+        try {
+            int index = Integer.parseInt(parts[0]);
+            int count = Integer.parseInt(parts[1]);
+            if (index < 1 || index > count) {
+                return null;
+            }
+            return new int[] {index, count};
+        } catch (NumberFormatException exception) {
+            return null;
+        }
+    }
+
+    /**
+     * Selects the projects of a partition.  Projects are assigned to the
+     * partitions in turn, and the projects a selected project depends on
+     * are also selected so that they are built or restored from the output
+     * cache before it.
+     *
+     * @param projectFiles list of project files
+     * @param dependencies dependencies of the projects
+     * @param index one-based index of the partition
+     * @param count number of partitions
+     * @return selected project files in the given order
+     */
+    protected static List<String> selectPartition(List<String> projectFiles,
+            Map<String, List<String>> dependencies, int index, int count) {
+        Set<String> selected = new HashSet<String>();
+        List<String> queue = new ArrayList<String>();
+        for (int i = index - 1; i < projectFiles.size(); i += count) {
+            queue.add(projectFiles.get(i));
+        }
+        while (!queue.isEmpty()) {
+            String project = queue.remove(queue.size() - 1);
+            if (selected.add(project) && dependencies.containsKey(project)) {
+                queue.addAll(dependencies.get(project));
+            }
+        }
+
+        List<String> ordered = new ArrayList<String>();
+        for (String project : projectFiles) {
+            if (selected.contains(project)) {
+                ordered.add(project);
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * Returns the project files to build.  Each line of the project file
+     * property is expanded with environment variables, and a line which
+     * contains wildcard characters is matched against the workspace.
+     *
+     * @param workspace workspace of the build
+     * @param env environment variables
+     * @return list of the project files, which is empty if no project file
+     * is specified
+     * @throws IOException if an I/O exception has occurred
+     * @throws InterruptedException if interrupted
+     */
+    protected List<String> getProjectFiles(FilePath workspace, EnvVars env)
+            throws IOException, InterruptedException {
+        List<String> projectFiles = new ArrayList<String>();
+        for (String line : projectFile.split("[\r\n]+")) {
+            line = env.expand(line.trim());
+            if (line.indexOf('*') >= 0 || line.indexOf('?') >= 0) {
+                List<String> matches = new ArrayList<String>();
+                for (FilePath match : workspace.list(line)) {
+                    matches.add(match.getRemote());
+                }
+                Collections.sort(matches);
+                projectFiles.addAll(matches);
+            } else if (!line.isEmpty()) {
+                projectFiles.add(line);
+            }
+        }
+        return projectFiles;
+    }
+
     /**
      * Returns the file path to a MSBuild executable.
      *
@@ -103,6 +384,416 @@ public abstract class AbstractMsbuildBuilder extends Builder {
             throws IOException, InterruptedException {
     }
 
+    /**
+     * Returns the command-line arguments to run MSBuild.
+     *
+     * @param msbuildPath file path to a MSBuild executable
+     * @param env environment variables to expand the options and the
+     * project file
+     * @return command-line arguments
+     */
+    protected ArgumentListBuilder getArguments(FilePath msbuildPath,
+            EnvVars env) {
+        String project = null;
+        if (!projectFile.isEmpty()) {
+            project = env.expand(projectFile);
+        }
+        return getArguments(msbuildPath, env, project);
+    }
+
+    /**
+     * Returns the command-line arguments to run MSBuild for a project file.
+     *
+     * @param msbuildPath file path to a MSBuild executable
+     * @param env environment variables to expand the options
+     * @param project expanded name of the project file, or <code>null</code>
+     * to let MSBuild find one in the working directory
+     * @return command-line arguments
+     */
+    protected ArgumentListBuilder getArguments(FilePath msbuildPath,
+            EnvVars env, String project) {
+        return getArguments(msbuildPath, env, project, null);
+    }
+
+    /**
+     * Returns the command-line arguments to run MSBuild for a project file
+     * in a cell of a matrix.
+     *
+     * @param msbuildPath file path to a MSBuild executable
+     * @param env environment variables to expand the options
+     * @param project expanded name of the project file, or <code>null</code>
+     * to let MSBuild find one in the working directory
+     * @param cell cell of the matrix, or <code>null</code> to build the
+     * project for its default platform and configuration
+     * @return command-line arguments
+     */
+    protected ArgumentListBuilder getArguments(FilePath msbuildPath,
+            EnvVars env, String project, MsbuildMatrixCell cell) {
+        ArgumentListBuilder args = new ArgumentListBuilder(
+                msbuildPath.getRemote());
+        if (logOptions.isDetailedLog()) {
+            String label = project;
+            if (cell != null && project != null) {
+                label = cell.getLabel(project);
+            }
+            // Given before the options so that they can be overridden.
+            args.add(MsbuildLogFiles.getOptions(label));
+        } else if (logOptions.isPerformanceSummary()) {
+            args.add(MsbuildPerformanceParser.PERFORMANCE_SUMMARY_OPTION);
+        }
+        StringTokenizer optionsTokenizer = new StringTokenizer(options);
+        boolean maxCpuCount = false;
+        Set<String> properties = new HashSet<String>();
+        while (optionsTokenizer.hasMoreTokens()) {
+            String option = env.expand(optionsTokenizer.nextToken());
+            // TODO: Check every option starts with '/'.
+            args.add(option);
+            if (isMaxCpuCountOption(option)) {
+                maxCpuCount = true;
+            }
+            addPropertyNames(option, properties);
+        }
+        if (reuseOptions.isNodeReuse()) {
+            if (!maxCpuCount) {
+                args.add("/m");
+            }
+            args.add("/nodeReuse:true");
+            String buildId = env.get(MsbuildNodePool.BUILD_ID_VARIABLE);
+            if (buildId != null) {
+                // Projects still see the original value.
+                args.add(MsbuildNodePool.BUILD_ID_OPTION + buildId);
+            }
+        }
+        if (cell != null) {
+            // Given after the options so that they override them.
+            for (String option
+                    : cell.getOptions(getPackageDirectory(env), properties)) {
+                args.add(option);
+            }
+        }
+        if (project != null) {
+            // TODO: Check the project file exists.
+            args.add(project);
+        }
+        return args;
+    }
+
+    private static boolean isMaxCpuCountOption(String option) {
+        if (!option.startsWith("/") && !option.startsWith("-")) {
+            return false;
+        }
+        String name = option.substring(1).toLowerCase();
+        int colon = name.indexOf(':');
+        if (colon >= 0) {
+            name = name.substring(0, colon);
+        }
+        return name.equals("m") || name.equals("maxcpucount");
+    }
+
+    /**
+     * Adds the names of the properties set by a <code>/p</code> option to a
+     * set in upper case, as MSBuild property names are case-insensitive.
+     *
+     * @param option command-line option
+     * @param names set to which the names are added
+     */
+    protected static void addPropertyNames(String option, Set<String> names) {
+        if (!option.startsWith("/") && !option.startsWith("-")) {
+            return;
+        }
+        int colon = option.indexOf(':');
+        if (colon < 0) {
+            return;
+        }
+        String name = option.substring(1, colon).toLowerCase();
+        if (!name.equals("p") && !name.equals("property")) {
+            return;
+        }
+        for (String property : option.substring(colon + 1).split(";")) {
+            int equals = property.indexOf('=');
+            if (equals > 0) {
+                names.add(property.substring(0, equals).trim().toUpperCase());
+            }
+        }
+    }
+
+    /**
+     * Returns the directory under which the packages built in the cells of
+     * a matrix are written.  This method shall be overridden in subclasses
+     * if necessary.
+     *
+     * @param env environment variables for MSBuild
+     * @return path to the directory on the node, or <code>null</code> to
+     * write them under the project directories
+     */
+    protected String getPackageDirectory(EnvVars env) {
+        return null;
+    }
+
+    /**
+     * Returns the name of the pool of reusable MSBuild worker nodes on a
+     * node.  A pool is identified by the MSBuild executable since MSBuild
+     * reuses worker nodes only for the executable which started them.
+     *
+     * @param msbuildPath file path to a MSBuild executable
+     * @param env environment variables for MSBuild
+     * @return name of the pool
+     */
+    protected String getNodePoolName(FilePath msbuildPath, EnvVars env) {
+        return msbuildPath.getRemote();
+    }
+
+    /**
+     * Returns the variables which are inputs of the projects in addition to
+     * the files, the command-line arguments and the environment variables
+     * referred to by the project files.  By default, they are the build
+     * variables, which the projects may refer to as properties.  This method
+     * shall be overridden in subclasses if necessary.
+     *
+     * @param build current build
+     * @param env environment variables for MSBuild
+     * @return map of the variables which affect the outputs
+     */
+    protected Map<String, String> getInputVariables(AbstractBuild<?, ?> build,
+            EnvVars env) {
+        return new TreeMap<String, String>(build.getBuildVariables());
+    }
+
+    /**
+     * Removes the commands for the projects whose inputs are unchanged since
+     * they were built successfully in the workspace.  A project is not
+     * skipped if any project it depends on is to be built.
+     *
+     * @param build current build
+     * @param listener {@link BuildListener} object
+     * @param env environment variables for MSBuild
+     * @param commands map from project files to command lines, from which
+     * the unchanged projects are removed
+     * @param dependencies map from project files to those on which they
+     * depend
+     * @param fingerprints fingerprints kept in the workspace
+     * @return map from the remaining project files to their fingerprints
+     * @throws IOException if an I/O exception has occurred
+     * @throws InterruptedException if interrupted
+     */
+    protected Map<String, String> skipUnchanged(AbstractBuild<?, ?> build,
+            BuildListener listener, EnvVars env,
+            Map<String, List<String>> commands,
+            Map<String, List<String>> dependencies,
+            ProjectFingerprints fingerprints)
+            throws IOException, InterruptedException {
+        String variables = getInputVariablesString(build, env);
+        Map<String, String> changed = new LinkedHashMap<String, String>();
+        Set<String> unchanged = new HashSet<String>();
+        for (Map.Entry<String, List<String>> entry : commands.entrySet()) {
+            String project = entry.getKey();
+            String key = getFingerprintKey(entry.getValue());
+            String fingerprint = ProjectFingerprints.compute(
+                    build.getWorkspace().child(
+                            MsbuildMatrixCell.getProjectFile(project)),
+                    key + "\n" + variables, env);
+            if (fingerprints.matches(key, fingerprint)) {
+                unchanged.add(project);
+            }
+            changed.put(project, fingerprint);
+        }
+
+        // Projects depending on changed ones must be built as well.
+        removeDependents(unchanged, commands, dependencies);
+
+        for (String project : unchanged) {
+            listener.getLogger().println(
+                    Messages.getProjectUnchangedMessage(project));
+            commands.remove(project);
+            changed.remove(project);
+        }
+        IncrementalBuildAction.add(build, changed.size(), unchanged.size());
+        return changed;
+    }
+
+    /**
+     * Restores the outputs of the projects which are cached and removes
+     * their commands.  A project is not restored if any project it depends
+     * on is to be built.
+     *
+     * @param build current build
+     * @param listener {@link BuildListener} object
+     * @param env environment variables for MSBuild
+     * @param commands map from project files to command lines, from which
+     * the restored projects are removed
+     * @param dependencies map from project files to those on which they
+     * depend
+     * @param cache output cache
+     * @return map from the remaining project files to their cache keys
+     * @throws IOException if an I/O exception has occurred
+     * @throws InterruptedException if interrupted
+     */
+    protected Map<String, String> restoreCached(AbstractBuild<?, ?> build,
+            BuildListener listener, EnvVars env,
+            Map<String, List<String>> commands,
+            Map<String, List<String>> dependencies,
+            ProjectOutputCache cache)
+            throws IOException, InterruptedException {
+        String variables = getInputVariablesString(build, env);
+        FilePath workspace = build.getWorkspace();
+        Map<String, String> missed = new LinkedHashMap<String, String>();
+        Set<String> cached = new HashSet<String>();
+        for (Map.Entry<String, List<String>> entry : commands.entrySet()) {
+            String project = entry.getKey();
+            List<String> command = entry.getValue();
+            // The project file itself is digested relative to the workspace.
+            String options = getFingerprintKey(
+                    command.subList(1, command.size() - 1));
+            String key = ProjectOutputCache.computeKey(workspace,
+                    workspace.child(MsbuildMatrixCell.getProjectFile(project)),
+                    options + "\n" + variables, env);
+            if (cache.contains(key)) {
+                cached.add(project);
+            }
+            missed.put(project, key);
+        }
+
+        // Projects depending on built ones must be built as well.
+        removeDependents(cached, commands, dependencies);
+
+        for (String project : commands.keySet().toArray(new String[0])) {
+            if (cached.contains(project)
+                    && cache.restore(missed.get(project), workspace)) {
+                listener.getLogger().println(
+                        Messages.getProjectRestoredMessage(project));
+                commands.remove(project);
+                missed.remove(project);
+            }
+        }
+        return missed;
+    }
+
+    /**
+     * Stores the outputs of the projects which have been built successfully.
+     * Any failure is reported but does not fail the build.
+     *
+     * @param build current build
+     * @param listener {@link BuildListener} object
+     * @param env environment variables for MSBuild
+     * @param commands map from project files to command lines
+     * @param missed map from the built project files to their cache keys
+     * @param statuses map from project files to exit statuses
+     * @param cache output cache
+     * @param since time on the node when the projects started to be built
+     * @throws InterruptedException if interrupted
+     */
+    protected void storeOutputs(AbstractBuild<?, ?> build,
+            BuildListener listener, EnvVars env,
+            Map<String, List<String>> commands, Map<String, String> missed,
+            Map<String, Integer> statuses, ProjectOutputCache cache,
+            long since)
+            throws InterruptedException {
+        FilePath workspace = build.getWorkspace();
+        for (Map.Entry<String, String> entry : missed.entrySet()) {
+            String project = entry.getKey();
+            Integer status = statuses.get(project);
+            if (status == null || status != 0) {
+                continue;
+            }
+            try {
+                int count = cache.store(entry.getValue(), workspace,
+                        workspace.child(
+                                MsbuildMatrixCell.getProjectFile(project)),
+                        ProjectOutputCache.getProperties(
+                                commands.get(project)),
+                        env, since);
+                if (count < 0) {
+                    listener.getLogger().println(
+                            Messages.getProjectNotCachedMessage(project));
+                }
+            } catch (IOException exception) {
+                listener.error(Messages.getOutputCacheFailedMessage(
+                        project, exception));
+            }
+        }
+    }
+
+    private String getInputVariablesString(AbstractBuild<?, ?> build,
+            EnvVars env) {
+        StringBuilder variables = new StringBuilder();
+        for (Map.Entry<String, String> entry
+                : new TreeMap<String, String>(getInputVariables(build, env))
+                        .entrySet()) {
+            variables.append(entry.getKey()).append('=')
+                    .append(entry.getValue()).append('\n');
+        }
+        return variables.toString();
+    }
+
+    /**
+     * Removes the projects which depend on any project to be built from a set
+     * of projects not to be built.
+     */
+    private static void removeDependents(Set<String> projects,
+            Map<String, List<String>> commands,
+            Map<String, List<String>> dependencies) {
+        boolean removed = true;
+        while (removed) {
+            removed = false;
+            Iterator<String> i = projects.iterator();
+            while (i.hasNext()) {
+                List<String> required = dependencies.get(i.next());
+                if (required != null) {
+                    for (String dependency : required) {
+                        if (commands.containsKey(dependency)
+                                && !projects.contains(dependency)) {
+                            i.remove();
+                            removed = true;
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Updates the fingerprints of the projects which have been built.
+     *
+     * @param commands map from project files to command lines
+     * @param changed map from the built project files to their fingerprints
+     * @param statuses map from project files to exit statuses
+     * @param fingerprints fingerprints kept in the workspace
+     * @throws IOException if an I/O exception has occurred
+     * @throws InterruptedException if interrupted
+     */
+    protected void updateFingerprints(Map<String, List<String>> commands,
+            Map<String, String> changed, Map<String, Integer> statuses,
+            ProjectFingerprints fingerprints)
+            throws IOException, InterruptedException {
+        for (Map.Entry<String, String> entry : changed.entrySet()) {
+            String project = entry.getKey();
+            Integer status = statuses.get(project);
+            String fingerprint = null;
+            if (status != null && status == 0) {
+                fingerprint = entry.getValue();
+            }
+            fingerprints.put(getFingerprintKey(commands.get(project)),
+                    fingerprint);
+        }
+        fingerprints.save();
+    }
+
+    private static String getFingerprintKey(List<String> command) {
+        StringBuilder key = new StringBuilder();
+        for (String arg : command) {
+            if (arg.startsWith(MsbuildNodePool.BUILD_ID_OPTION)) {
+                // It differs by build.
+                continue;
+            }
+            if (key.length() != 0) {
+                key.append(' ');
+            }
+            key.append(arg);
+        }
+        return key.toString();
+    }
+
     /**
      * Performs the build step.
      *
@@ -118,10 +809,51 @@ public abstract class AbstractMsbuildBuilder extends Builder {
     public boolean perform(
             AbstractBuild<?, ?> build, Launcher launcher,
             BuildListener listener) throws IOException, InterruptedException {
-        EnvVars env = build.getEnvironment(listener);
-        buildEnvVars(build, launcher, listener, env);
-        // Build variables overrides others.
-        env.putAll(build.getBuildVariables());
+        MsbuildTimingAction.Step timing = new MsbuildTimingAction.Step(
+                projectFile, build.getBuiltOnStr());
+        try {
+            return perform(build, launcher, listener, timing);
+        } finally {
+            recordTiming(build, timing);
+        }
+    }
+
+    /**
+     * Performs the build step recording the timing of each phase.
+     *
+     * @param build current build
+     * @param launcher {@link Launcher} object
+     * @param listener {@link BuildListener} object
+     * @param timing timings to which phases are recorded
+     * @return <code>true</code> if the current build can be continued, or
+     * <code>false</code> otherwise
+     * @throws IOException if an I/O exception has occurred
+     * @throws InterruptedException if this thread has been interrupted
+     */
+    protected boolean perform(
+            AbstractBuild<?, ?> build, Launcher launcher,
+            BuildListener listener, MsbuildTimingAction.Step timing)
+            throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        MsbuildEnvironmentAction environments =
+                MsbuildEnvironmentAction.get(build);
+        String environmentKey = getEnvironmentKey();
+        EnvVars env = null;
+        if (!reuseOptions.isRefreshEnvironment()) {
+            env = environments.get(environmentKey);
+        }
+        if (env != null) {
+            start = timing.record(PHASE_ENVIRONMENT, start);
+            start = timing.record(PHASE_VARIABLES, start);
+        } else {
+            env = build.getEnvironment(listener);
+            start = timing.record(PHASE_ENVIRONMENT, start);
+            buildEnvVars(build, launcher, listener, env);
+            // Build variables overrides others.
+            env.putAll(build.getBuildVariables());
+            environments.put(environmentKey, env);
+            start = timing.record(PHASE_VARIABLES, start);
+        }
 
         FilePath msbuildPath = getMsbuildPath(launcher.getChannel(), env);
         if (msbuildPath == null) {
@@ -130,28 +862,451 @@ public abstract class AbstractMsbuildBuilder extends Builder {
             return false;
         }
 
-        Launcher.ProcStarter msbuildStarter = launcher.launch();
-        msbuildStarter.envs(env);
-        msbuildStarter.pwd(build.getWorkspace());
-        msbuildStarter.stdout(listener.getLogger());
-        msbuildStarter.stderr(listener.getLogger());
+        String poolKey = null;
+        if (reuseOptions.isNodeReuse()) {
+            poolKey = MsbuildNodePool.getInstance().acquire(
+                    build.getBuiltOnStr(), getNodePoolName(msbuildPath, env),
+                    reuseOptions.getNodeIdleTimeout(), env);
+        }
+        MsbuildProcessTree tree = new MsbuildProcessTree(launcher, env);
+        tree.startTimeout(timeout);
+        try {
+            return performProjects(build, launcher, listener, env,
+                    msbuildPath, timing, start);
+        } catch (InterruptedException exception) {
+            // Aborted or timed out.
+            tree.kill(listener);
+            if (poolKey != null) {
+                // Reused worker nodes have the cookie of an earlier step.
+                String key = poolKey;
+                poolKey = null;
+                MsbuildNodePool.getInstance().discard(key, launcher);
+            }
+            if (!tree.isTimedOut()) {
+                throw exception;
+            }
+            listener.error(Messages.getStepTimedOutMessage(timeout));
+            return false;
+        } finally {
+            tree.close();
+            if (poolKey != null) {
+                MsbuildNodePool.getInstance().release(poolKey);
+            }
+        }
+    }
 
-        ArgumentListBuilder args = new ArgumentListBuilder(
-                msbuildPath.getRemote());
-        StringTokenizer optionsTokenizer = new StringTokenizer(options);
-        while (optionsTokenizer.hasMoreTokens()) {
-            String option = env.expand(optionsTokenizer.nextToken());
-            // TODO: Check every option starts with '/'.
-            args.add(option);
+    private boolean performProjects(
+            AbstractBuild<?, ?> build, Launcher launcher,
+            BuildListener listener, EnvVars env, FilePath msbuildPath,
+            MsbuildTimingAction.Step timing, long start)
+            throws IOException, InterruptedException {
+        List<String> projectFiles = getProjectFiles(build.getWorkspace(), env);
+        Map<String, List<String>> dependencies =
+                new HashMap<String, List<String>>();
+        if (parallelOptions.isParallelGroups()) {
+            projectFiles = expandGroupProjects(build.getWorkspace(),
+                    projectFiles, dependencies);
         }
-        if (!projectFile.isEmpty()) {
-            // TODO: Check the project file exists.
-            args.add(env.expand(projectFile));
+        String partition = parallelOptions.getPartition();
+        if (partition != null && !partition.trim().isEmpty()) {
+            String expanded = env.expand(partition.trim());
+            int[] slice = parsePartition(expanded);
+            if (slice == null) {
+                listener.fatalError(
+                        Messages.getInvalidPartitionMessage(expanded));
+                return false;
+            }
+            projectFiles = selectPartition(projectFiles, dependencies,
+                    slice[0], slice[1]);
+            listener.getLogger().println(Messages.getPartitionMessage(
+                    expanded, projectFiles));
+            if (projectFiles.isEmpty()) {
+                return true;
+            }
+        }
+        if (projectFiles.isEmpty() && !projectFile.trim().isEmpty()) {
+            listener.fatalError(Messages.getNoProjectFilesMessage(projectFile));
+            return false;
+        }
+        List<MsbuildMatrixCell> cells = getMatrixCells(env);
+        if (!cells.isEmpty()) {
+            if (projectFiles.isEmpty()) {
+                listener.fatalError(Messages.getMatrixNoProjectMessage());
+                return false;
+            }
+            return performParallel(build, launcher, listener, env,
+                    msbuildPath, projectFiles, dependencies, cells, timing,
+                    start);
+        }
+        if (projectFiles.size() > 1) {
+            return performParallel(build, launcher, listener, env,
+                    msbuildPath, projectFiles, dependencies, timing, start);
+        }
+
+        String project = null;
+        if (!projectFiles.isEmpty()) {
+            project = projectFiles.get(0);
+        }
+        List<String> args = getArguments(msbuildPath, env, project).toList();
+
+        Map<String, List<String>> allCommands =
+                new LinkedHashMap<String, List<String>>();
+        if (project != null) {
+            allCommands.put(project, args);
+        }
+
+        ProjectFingerprints fingerprints = null;
+        Map<String, List<String>> commands = allCommands;
+        Map<String, String> changed = null;
+        if (reuseOptions.isIncremental() && project != null) {
+            fingerprints = new ProjectFingerprints(build.getWorkspace());
+            commands = new LinkedHashMap<String, List<String>>(allCommands);
+            changed = skipUnchanged(build, listener, env, commands,
+                    dependencies, fingerprints);
+            if (commands.isEmpty()) {
+                return true;
+            }
+        }
+
+        ProjectOutputCache cache = null;
+        Map<String, String> missed = null;
+        long since = 0;
+        if (reuseOptions.isOutputCache() && project != null) {
+            cache = ProjectOutputCache.getDefault();
+            commands = new LinkedHashMap<String, List<String>>(commands);
+            missed = restoreCached(build, listener, env, commands,
+                    dependencies, cache);
+            if (commands.isEmpty()) {
+                if (fingerprints != null) {
+                    updateFingerprints(allCommands, changed,
+                            Collections.singletonMap(project, 0),
+                            fingerprints);
+                }
+                return true;
+            }
+            since = ProjectOutputCache.getNodeTime(launcher.getChannel());
+        }
+
+        if (logOptions.isDetailedLog()) {
+            MsbuildLogFiles.prepare(build.getWorkspace());
+        }
+        OutputStream output =
+                getOutputParsers(build).open(listener.getLogger());
+        int status;
+        try {
+            Launcher.ProcStarter msbuildStarter = launcher.launch();
+            msbuildStarter.envs(env);
+            msbuildStarter.pwd(build.getWorkspace());
+            msbuildStarter.stdout(output);
+            msbuildStarter.stderr(output);
+
+            msbuildStarter.cmds(args);
+
+            Proc msbuildProc = msbuildStarter.start();
+            start = timing.record(PHASE_START, start);
+            // Any error messages must already be printed.
+            status = msbuildProc.join();
+            timing.record(PHASE_MSBUILD, start);
+        } finally {
+            output.close();
+            if (logOptions.isDetailedLog()) {
+                MsbuildLogFiles.archive(build, listener,
+                        Collections.singletonList(project));
+            }
+        }
+
+        Map<String, Integer> statuses =
+                Collections.singletonMap(project, status);
+        if (cache != null) {
+            storeOutputs(build, listener, env, allCommands, missed,
+                    statuses, cache, since);
+        }
+        if (fingerprints != null) {
+            updateFingerprints(allCommands, changed, statuses, fingerprints);
+        }
+        return status == 0;
+    }
+
+    /**
+     * Replaces project group files with the projects in them.
+     *
+     * @param workspace workspace of the build
+     * @param projectFiles list of project files
+     * @param dependencies map to which the dependencies of the projects in
+     * the project groups are put
+     * @return list of project files in which project groups are expanded
+     * @throws IOException if an I/O exception has occurred
+     * @throws InterruptedException if interrupted
+     */
+    protected List<String> expandGroupProjects(FilePath workspace,
+            List<String> projectFiles, Map<String, List<String>> dependencies)
+            throws IOException, InterruptedException {
+        List<String> expanded = new ArrayList<String>();
+        for (String project : projectFiles) {
+            if (GroupProjectParser.isGroupProject(project)) {
+                Map<String, List<String>> members = workspace.child(project)
+                        .act(GroupProjectParser.getReader());
+                expanded.addAll(members.keySet());
+                dependencies.putAll(members);
+            } else {
+                expanded.add(project);
+            }
+        }
+        return expanded;
+    }
+
+    /**
+     * Performs the build step for multiple project files running MSBuild
+     * processes in parallel.
+     *
+     * @param build current build
+     * @param launcher {@link Launcher} object
+     * @param listener {@link BuildListener} object
+     * @param env environment variables for MSBuild
+     * @param msbuildPath file path to a MSBuild executable
+     * @param projectFiles list of project files
+     * @param dependencies map from project files to those on which they
+     * depend
+     * @param timing timings to which phases are recorded
+     * @param start value of {@link System#nanoTime} when the current phase
+     * started
+     * @return <code>true</code> if all the MSBuild processes succeeded, or
+     * <code>false</code> otherwise
+     * @throws IOException if an I/O exception has occurred
+     * @throws InterruptedException if this thread has been interrupted
+     */
+    protected boolean performParallel(
+            AbstractBuild<?, ?> build, Launcher launcher,
+            BuildListener listener, EnvVars env, FilePath msbuildPath,
+            List<String> projectFiles, Map<String, List<String>> dependencies,
+            MsbuildTimingAction.Step timing, long start)
+            throws IOException, InterruptedException {
+        return performParallel(build, launcher, listener, env, msbuildPath,
+                projectFiles, dependencies,
+                Collections.<MsbuildMatrixCell>emptyList(), timing, start);
+    }
+
+    /**
+     * Performs the build step for project files in the cells of a matrix
+     * running MSBuild processes in parallel.  The environment is shared by
+     * all the processes, and a table of the results is printed for each
+     * cell at the end.
+     *
+     * @param build current build
+     * @param launcher {@link Launcher} object
+     * @param listener {@link BuildListener} object
+     * @param env environment variables for MSBuild
+     * @param msbuildPath file path to a MSBuild executable
+     * @param projectFiles list of project files
+     * @param dependencies map from project files to those on which they
+     * depend
+     * @param cells cells of the matrix, or an empty list to build each
+     * project for its default platform and configuration
+     * @param timing timings to which phases are recorded
+     * @param start value of {@link System#nanoTime} when the current phase
+     * started
+     * @return <code>true</code> if all the MSBuild processes succeeded, or
+     * <code>false</code> otherwise
+     * @throws IOException if an I/O exception has occurred
+     * @throws InterruptedException if this thread has been interrupted
+     */
+    protected boolean performParallel(
+            AbstractBuild<?, ?> build, Launcher launcher,
+            BuildListener listener, EnvVars env, FilePath msbuildPath,
+            List<String> projectFiles, Map<String, List<String>> dependencies,
+            List<MsbuildMatrixCell> cells, MsbuildTimingAction.Step timing,
+            long start)
+            throws IOException, InterruptedException {
+        int maxProcesses = parallelOptions.getParallelism();
+        if (maxProcesses <= 0) {
+            maxProcesses = ParallelMsbuildRunner.getProcessorCount(
+                    launcher.getChannel());
+        }
+
+        Map<String, List<String>> commands =
+                new LinkedHashMap<String, List<String>>();
+        for (String project : projectFiles) {
+            if (cells.isEmpty()) {
+                commands.put(project,
+                        getArguments(msbuildPath, env, project).toList());
+            }
+            // The cells of a project are dispatched together.
+            for (MsbuildMatrixCell cell : cells) {
+                commands.put(cell.getLabel(project),
+                        getArguments(msbuildPath, env, project, cell)
+                                .toList());
+            }
+        }
+        if (!cells.isEmpty()) {
+            dependencies = getMatrixDependencies(dependencies, cells);
+        }
+
+        ProjectFingerprints fingerprints = null;
+        Map<String, List<String>> allCommands = commands;
+        Map<String, String> changed = null;
+        if (reuseOptions.isIncremental()) {
+            fingerprints = new ProjectFingerprints(build.getWorkspace());
+            commands = new LinkedHashMap<String, List<String>>(allCommands);
+            changed = skipUnchanged(build, listener, env, commands,
+                    dependencies, fingerprints);
         }
-        msbuildStarter.cmds(args.toList());
 
-        Proc msbuildProc = msbuildStarter.start();
-        // Any error messages must already be printed.
-        return msbuildProc.join() == 0;
+        ProjectOutputCache cache = null;
+        Map<String, String> missed = null;
+        Set<String> restored = new HashSet<String>();
+        long since = 0;
+        if (reuseOptions.isOutputCache()) {
+            cache = ProjectOutputCache.getDefault();
+            restored.addAll(commands.keySet());
+            commands = new LinkedHashMap<String, List<String>>(commands);
+            missed = restoreCached(build, listener, env, commands,
+                    dependencies, cache);
+            restored.removeAll(commands.keySet());
+            since = ProjectOutputCache.getNodeTime(launcher.getChannel());
+        }
+
+        ParallelMsbuildRunner runner = new ParallelMsbuildRunner(launcher,
+                listener, env, build.getWorkspace(), maxProcesses,
+                parallelOptions.isFailFast(), getOutputParsers(build));
+        if (logOptions.isDetailedLog()) {
+            MsbuildLogFiles.prepare(build.getWorkspace());
+        }
+        // The processes themselves are started while the runner waits.
+        start = timing.record(PHASE_START, start);
+        Map<String, Integer> statuses;
+        try {
+            statuses = runner.run(commands, dependencies);
+        } finally {
+            if (logOptions.isDetailedLog()) {
+                MsbuildLogFiles.archive(build, listener, commands.keySet());
+            }
+        }
+        timing.record(PHASE_MSBUILD, start);
+        if (cache != null) {
+            storeOutputs(build, listener, env, allCommands, missed,
+                    statuses, cache, since);
+        }
+        if (fingerprints != null) {
+            Map<String, Integer> results =
+                    new HashMap<String, Integer>(statuses);
+            for (String project : restored) {
+                results.put(project, 0);
+            }
+            updateFingerprints(allCommands, changed, results, fingerprints);
+        }
+
+        if (!cells.isEmpty()) {
+            printMatrixResults(listener, projectFiles, cells, commands,
+                    statuses);
+        }
+
+        boolean succeeded = statuses.size() == commands.size();
+        for (int status : statuses.values()) {
+            if (status != 0) {
+                succeeded = false;
+            }
+        }
+        return succeeded;
+    }
+
+    /**
+     * Prints the number of the projects which succeeded, failed and were
+     * not built in each cell of a matrix.  Projects which were skipped as
+     * unchanged or restored from the output cache count as succeeded.
+     *
+     * @param listener {@link BuildListener} object
+     * @param projectFiles list of project files
+     * @param cells cells of the matrix
+     * @param commands map from labels to command lines which were run
+     * @param statuses map from labels to exit statuses
+     */
+    protected static void printMatrixResults(BuildListener listener,
+            List<String> projectFiles, List<MsbuildMatrixCell> cells,
+            Map<String, List<String>> commands,
+            Map<String, Integer> statuses) {
+        listener.getLogger().println(Messages.getMatrixResultsMessage());
+        for (MsbuildMatrixCell cell : cells) {
+            int[] counts = countMatrixResults(projectFiles, cell, commands,
+                    statuses);
+            listener.getLogger().println(Messages.getMatrixCellResultMessage(
+                    cell.getName(), counts[0], counts[1], counts[2]));
+        }
+    }
+
+    /**
+     * Counts the results of the projects in a cell of a matrix.
+     *
+     * @param projectFiles list of project files
+     * @param cell cell of the matrix
+     * @param commands map from labels to command lines which were run
+     * @param statuses map from labels to exit statuses
+     * @return array of the numbers of the projects which succeeded, failed
+     * and were not built
+     */
+    protected static int[] countMatrixResults(List<String> projectFiles,
+            MsbuildMatrixCell cell, Map<String, List<String>> commands,
+            Map<String, Integer> statuses) {
+        int[] counts = new int[3];
+        for (String project : projectFiles) {
+            String label = cell.getLabel(project);
+            Integer status = statuses.get(label);
+            if (!commands.containsKey(label)
+                    || status != null && status == 0) {
+                counts[0] += 1;
+            } else if (status != null) {
+                counts[1] += 1;
+            } else {
+                counts[2] += 1;
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Returns the parsers for the output of MSBuild in a build.
+     *
+     * @param build current build
+     * @return {@link MsbuildOutputParsers} object
+     */
+    protected MsbuildOutputParsers getOutputParsers(
+            AbstractBuild<?, ?> build) {
+        MsbuildPerformanceAction performance = null;
+        if (logOptions.isPerformanceSummary()
+                || logOptions.isDetailedLog()) {
+            performance = MsbuildPerformanceAction.get(build);
+        }
+        return new MsbuildOutputParsers(build.getCharset(),
+                MsbuildDiagnosticsAction.get(build), performance);
+    }
+
+    /**
+     * Returns the actions which show the trends of the MSBuild diagnostics
+     * and performance.
+     *
+     * @param project project
+     * @return collection of the project actions
+     */
+    @Override
+    public Collection<? extends Action> getProjectActions(
+            AbstractProject<?, ?> project) {
+        List<Action> actions = new ArrayList<Action>();
+        actions.add(new MsbuildDiagnosticsProjectAction(project));
+        if (logOptions.isPerformanceSummary()
+                || logOptions.isDetailedLog()) {
+            actions.add(new MsbuildPerformanceProjectAction(project));
+        }
+        return actions;
+    }
+
+    /**
+     * Records the timings of a build step.  This method shall be overridden
+     * in subclasses to aggregate them if necessary.
+     *
+     * @param build current build
+     * @param timing timings of the build step
+     */
+    protected void recordTiming(AbstractBuild<?, ?> build,
+            MsbuildTimingAction.Step timing) {
+        MsbuildTimingAction.addStep(build, timing);
     }
 }
@@ -0,0 +1,154 @@
+/*
+ * BDSBuildWrapper
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import java.io.IOException;
+import java.util.Map;
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.BuildListener;
+import hudson.model.Computer;
+import hudson.model.Node;
+import hudson.tasks.BuildWrapper;
+import hudson.tasks.BuildWrapperDescriptor;
+import hudson.util.ListBoxModel;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.vx68k.hudson.plugin.bds.resources.Messages;
+
+/**
+ * Build wrapper which reads the RAD Studio environment variables once and
+ * applies them to all the build steps, so that batch steps need not call
+ * <code>rsvars.bat</code> and {@link BDSBuilder} steps using the same
+ * installation need not read it again.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class BDSBuildWrapper extends BuildWrapper {
+
+    /**
+     * Name of the environment variable set to the name of the installation
+     * whose variables are applied by this wrapper.
+     */
+    public static final String INSTALLATION_VARIABLE =
+            "HUDSON_BDS_INSTALLATION";
+
+    private final String installationName;
+
+    /**
+     * Constructs this object with property values.
+     * @param installationName name of the RAD Studio installation to use
+     */
+    @DataBoundConstructor
+    public BDSBuildWrapper(String installationName) {
+        this.installationName = installationName;
+    }
+
+    /**
+     * Returns the name of the RAD Studio installation to use.
+     * @return name of the RAD Studio installation
+     */
+    public String getInstallationName() {
+        return installationName;
+    }
+
+    /**
+     * Reads the RAD Studio environment variables for the build.
+     *
+     * @param build current build
+     * @param launcher {@link Launcher} object
+     * @param listener {@link BuildListener} object
+     * @return environment with the variables, or <code>null</code> to fail
+     * the build
+     * @throws IOException if an I/O exception has occurred
+     * @throws InterruptedException if interrupted
+     */
+    @Override
+    public Environment setUp(AbstractBuild build, Launcher launcher,
+            BuildListener listener) throws IOException, InterruptedException {
+        BDSInstallation installation =
+                BDSInstallation.getInstallation(installationName);
+        if (installation == null) {
+            listener.error(Messages.getInstallationNotFoundMessage(
+                    installationName));
+            return null;
+        }
+
+        Node node = Computer.currentComputer().getNode();
+        EnvVars environment = build.getEnvironment(listener);
+        installation = installation.forNode(node, listener);
+        installation = installation.forEnvironment(environment);
+
+        final Map<String, String> variables =
+                installation.readVariables(build, launcher, listener,
+                        environment);
+        if (variables == null) {
+            // Any error messages must already be printed.
+            return null;
+        }
+        return new Environment() {
+            @Override
+            public void buildEnvVars(Map<String, String> env) {
+                env.putAll(variables);
+                env.put(INSTALLATION_VARIABLE, installationName);
+            }
+        };
+    }
+
+    /**
+     * Describes {@link BDSBuildWrapper}.
+     * @author Kaz Nishimura
+     * @since 4.0
+     */
+    @Extension
+    public static final class Descriptor extends BuildWrapperDescriptor {
+
+        public ListBoxModel doFillInstallationNameItems() {
+            ListBoxModel items = new ListBoxModel();
+            for (BDSInstallation i : BDSInstallation.getInstallations()) {
+                items.add(i.getName(), i.getName());
+            }
+            return items;
+        }
+
+        /**
+         * Returns <code>true</code> currently for any projects.
+         *
+         * @param item project
+         * @return <code>true</code>
+         */
+        @Override
+        public boolean isApplicable(AbstractProject<?, ?> item) {
+            return true;
+        }
+
+        /**
+         * Returns the display name for {@link BDSBuildWrapper}.
+         *
+         * @return display name for {@link BDSBuildWrapper}
+         */
+        @Override
+        public String getDisplayName() {
+            return Messages.getBuildWrapperDisplayName();
+        }
+    }
+}
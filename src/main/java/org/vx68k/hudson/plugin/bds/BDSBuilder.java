@@ -20,6 +20,7 @@ package org.vx68k.hudson.plugin.bds;
 
 import java.io.IOException;
 import java.util.Map;
+import java.util.TreeMap;
 import hudson.EnvVars;
 import hudson.Extension;
 import hudson.FilePath;
@@ -28,6 +29,7 @@ import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
 import hudson.model.BuildListener;
 import hudson.model.Computer;
+import hudson.model.Executor;
 import hudson.model.Node;
 import hudson.remoting.VirtualChannel;
 import hudson.tasks.BuildStepDescriptor;
@@ -45,17 +47,89 @@ public class BDSBuilder extends AbstractMsbuildBuilder {
 
     private final String installationName;
 
+    private final BDSIsolationOptions isolationOptions;
+
+    /*
+     * Options saved before they were grouped.  They are only read from
+     * configurations and moved into their groups by readResolve.
+     */
+    @Deprecated
+    private Integer parallelism;
+    @Deprecated
+    private Boolean failFast;
+    @Deprecated
+    private Boolean parallelGroups;
+    @Deprecated
+    private String partition;
+    @Deprecated
+    private String platforms;
+    @Deprecated
+    private String configurations;
+    @Deprecated
+    private Boolean incremental;
+    @Deprecated
+    private Boolean outputCache;
+    @Deprecated
+    private Boolean nodeReuse;
+    @Deprecated
+    private Integer nodeIdleTimeout;
+    @Deprecated
+    private Boolean refreshEnvironment;
+    @Deprecated
+    private Boolean detailedLog;
+    @Deprecated
+    private Boolean performanceSummary;
+    @Deprecated
+    private Boolean executorIsolation;
+    @Deprecated
+    private Boolean isolationCleanup;
+
     /**
      * Constructs this object with property values.
      * @param projectFile name of the MSBuild project file
      * @param options command-line options for MSBuild
      * @param installationName name of the RAD Studio installation to use
      */
-    @DataBoundConstructor
     public BDSBuilder(String projectFile, String options,
             String installationName) {
-        super(projectFile, options);
+        this(projectFile, options, installationName, 0, null, null, null,
+                null, null);
+    }
+
+    /**
+     * Constructs this object with property values including the groups of
+     * options for multiple project files.
+     * @param projectFile names or wildcard patterns of the MSBuild project
+     * files, one per line
+     * @param options command-line options for MSBuild
+     * @param installationName name of the RAD Studio installation to use
+     * @param timeout minutes after which the build step is aborted, or zero
+     * for no timeout
+     * @param parallelOptions options to run MSBuild processes in parallel,
+     * or <code>null</code> for the defaults
+     * @param matrixOptions options to build the projects in a matrix of
+     * platforms and configurations, or <code>null</code> for the defaults
+     * @param reuseOptions options to reuse the results of earlier builds
+     * and build steps, or <code>null</code> for the defaults
+     * @param logOptions options for the output of MSBuild, or
+     * <code>null</code> for the defaults
+     * @param isolationOptions options to isolate the executors of the node,
+     * or <code>null</code> for the defaults
+     */
+    @DataBoundConstructor
+    public BDSBuilder(String projectFile, String options,
+            String installationName, int timeout,
+            MsbuildParallelOptions parallelOptions,
+            MsbuildMatrixOptions matrixOptions,
+            MsbuildReuseOptions reuseOptions, MsbuildLogOptions logOptions,
+            BDSIsolationOptions isolationOptions) {
+        super(projectFile, options, timeout, parallelOptions, matrixOptions,
+                reuseOptions, logOptions);
+        if (isolationOptions == null) {
+            isolationOptions = new BDSIsolationOptions();
+        }
         this.installationName = installationName;
+        this.isolationOptions = isolationOptions;
     }
 
     /**
@@ -68,6 +142,120 @@ public class BDSBuilder extends AbstractMsbuildBuilder {
         return installationName;
     }
 
+    /**
+     * Returns the options to isolate the executors of the node.
+     *
+     * @return options for the isolation
+     */
+    public BDSIsolationOptions getIsolationOptions() {
+        return isolationOptions;
+    }
+
+    /**
+     * Replaces this object with one which has all the groups of options if
+     * it has been read from a configuration saved without some of them.
+     * The options saved before they were grouped are moved into their
+     * groups.
+     *
+     * @return object with all the groups of options
+     */
+    protected Object readResolve() {
+        if (getParallelOptions() != null && getMatrixOptions() != null
+                && getReuseOptions() != null && getLogOptions() != null
+                && isolationOptions != null) {
+            return this;
+        }
+        MsbuildParallelOptions parallel = getParallelOptions();
+        if (parallel == null) {
+            parallel = new MsbuildParallelOptions(intValue(parallelism),
+                    booleanValue(failFast), booleanValue(parallelGroups),
+                    partition);
+        }
+        MsbuildMatrixOptions matrix = getMatrixOptions();
+        if (matrix == null) {
+            matrix = new MsbuildMatrixOptions(platforms, configurations);
+        }
+        MsbuildReuseOptions reuse = getReuseOptions();
+        if (reuse == null) {
+            reuse = new MsbuildReuseOptions(booleanValue(incremental),
+                    booleanValue(outputCache), booleanValue(nodeReuse),
+                    intValue(nodeIdleTimeout),
+                    booleanValue(refreshEnvironment));
+        }
+        MsbuildLogOptions log = getLogOptions();
+        if (log == null) {
+            log = new MsbuildLogOptions(booleanValue(detailedLog),
+                    booleanValue(performanceSummary));
+        }
+        BDSIsolationOptions isolation = isolationOptions;
+        if (isolation == null) {
+            isolation = new BDSIsolationOptions(
+                    booleanValue(executorIsolation),
+                    booleanValue(isolationCleanup));
+        }
+        return new BDSBuilder(getProjectFile(), getOptions(),
+                installationName, getTimeout(), parallel, matrix, reuse, log,
+                isolation);
+    }
+
+    private static int intValue(Integer value) {
+        if (value == null) {
+            return 0;
+        }
+        return value;
+    }
+
+    private static boolean booleanValue(Boolean value) {
+        return value != null && value;
+    }
+
+    /**
+     * Returns the isolated directories for the current executor.
+     *
+     * @return {@link BDSExecutorIsolation} object, or <code>null</code> if
+     * not available
+     */
+    protected BDSExecutorIsolation getExecutorIsolation() {
+        Executor executor = Executor.currentExecutor();
+        if (executor == null) {
+            return null;
+        }
+        Node node = executor.getOwner().getNode();
+        if (node == null) {
+            return null;
+        }
+        return BDSExecutorIsolation.forExecutor(node, installationName,
+                executor.getNumber());
+    }
+
+    /**
+     * Performs the build step and deletes the temporary files of the
+     * executor afterwards if requested.
+     *
+     * @param build current build
+     * @param launcher {@link Launcher} object
+     * @param listener {@link BuildListener} object
+     * @return <code>true</code> if the current build can be continued, or
+     * <code>false</code> otherwise
+     * @throws IOException if an I/O exception has occurred
+     * @throws InterruptedException if this thread has been interrupted
+     */
+    @Override
+    public boolean perform(AbstractBuild<?, ?> build, Launcher launcher,
+            BuildListener listener) throws IOException, InterruptedException {
+        try {
+            return super.perform(build, launcher, listener);
+        } finally {
+            if (isolationOptions.isExecutorIsolation()
+                    && isolationOptions.isIsolationCleanup()) {
+                BDSExecutorIsolation isolation = getExecutorIsolation();
+                if (isolation != null) {
+                    isolation.cleanUp();
+                }
+            }
+        }
+    }
+
     /**
      * Builds environment variables for RAD Studio.
      *
@@ -83,7 +271,28 @@ public class BDSBuilder extends AbstractMsbuildBuilder {
             BuildListener listener, EnvVars environment)
             throws IOException, InterruptedException {
         super.buildEnvVars(build, launcher, listener, environment);
+        if (installationName == null || !installationName.equals(
+                environment.get(BDSBuildWrapper.INSTALLATION_VARIABLE))) {
+            // Otherwise {@link BDSBuildWrapper} has already set them.
+            putInstallationVariables(build, launcher, listener, environment);
+        }
 
+        if (isolationOptions.isExecutorIsolation()) {
+            BDSExecutorIsolation isolation = getExecutorIsolation();
+            if (isolation != null) {
+                isolation.prepare();
+                // Overrides those set by the batch file.
+                environment.putAll(isolation.getVariables());
+                listener.getLogger().println(
+                        Messages.getExecutorIsolationMessage(
+                                isolation.getDirectory().getRemote()));
+            }
+        }
+    }
+
+    private void putInstallationVariables(AbstractBuild<?, ?> build,
+            Launcher launcher, BuildListener listener, EnvVars environment)
+            throws IOException, InterruptedException {
         Node node = Computer.currentComputer().getNode();
 
         BDSInstallation installation =
@@ -92,8 +301,8 @@ public class BDSBuilder extends AbstractMsbuildBuilder {
             installation = installation.forNode(node, listener);
             installation = installation.forEnvironment(environment);
 
-            Map<String, String> variables =
-                     installation.readVariables(build, launcher, listener);
+            Map<String, String> variables = installation.readVariables(
+                    build, launcher, listener, environment);
             // Any error messages shall already be printed.
             if (variables != null) {
                 environment.putAll(variables);
@@ -101,6 +310,75 @@ public class BDSBuilder extends AbstractMsbuildBuilder {
         }
     }
 
+    /**
+     * Returns the key of the environment, which depends on the RAD Studio
+     * installation.
+     *
+     * @return key of the environment
+     */
+    @Override
+    protected String getEnvironmentKey() {
+        String key = super.getEnvironmentKey() + ":" + installationName;
+        if (isolationOptions.isExecutorIsolation()) {
+            key += ":isolated";
+        }
+        return key;
+    }
+
+    /**
+     * Returns the build variables and the RAD Studio variables, which affect
+     * the outputs of the projects.  With executor isolation,
+     * <code>BDSCOMMONDIR</code> differs by executor so that a project is not
+     * skipped on an executor whose package directories lack its outputs.
+     *
+     * @param build current build
+     * @param env environment variables for MSBuild
+     * @return map of the build variables and the RAD Studio variables
+     */
+    @Override
+    protected Map<String, String> getInputVariables(AbstractBuild<?, ?> build,
+            EnvVars env) {
+        Map<String, String> variables = new TreeMap<String, String>(
+                super.getInputVariables(build, env));
+        for (Map.Entry<String, String> entry : env.entrySet()) {
+            String key = entry.getKey();
+            if (key.startsWith("BDS") || key.startsWith("CG_")
+                    || key.startsWith("Framework")) {
+                variables.put(key, entry.getValue());
+            }
+        }
+        return variables;
+    }
+
+    /**
+     * Returns the common directory of RAD Studio, under which packages are
+     * written by default.
+     *
+     * @param env environment variables for MSBuild
+     * @return value of <code>BDSCOMMONDIR</code>, or <code>null</code> if
+     * not set
+     */
+    @Override
+    protected String getPackageDirectory(EnvVars env) {
+        return env.get("BDSCOMMONDIR");
+    }
+
+    /**
+     * Records the timings of a build step and aggregates them into
+     * {@link BDSTimingStatistics}.
+     *
+     * @param build current build
+     * @param timing timings of the build step
+     */
+    @Override
+    protected void recordTiming(AbstractBuild<?, ?> build,
+            MsbuildTimingAction.Step timing) {
+        super.recordTiming(build, timing);
+        if (installationName != null) {
+            BDSTimingStatistics.getInstance().add(installationName, timing);
+        }
+    }
+
     /**
      * Returns the file path to the MSBuild executable used by RAD Studio.
      *
@@ -112,14 +390,7 @@ public class BDSBuilder extends AbstractMsbuildBuilder {
     @Override
     protected FilePath getMsbuildPath(VirtualChannel channel,
             EnvVars environment) {
-        String frameworkDir = environment.get("FrameworkDir");
-        if (frameworkDir == null) {
-            return null;
-        }
-
-        // RAD Stduio sets FrameworkDir including FrameworkVersion.
-        FilePath msbuildPath = new FilePath(channel, frameworkDir);
-        return new FilePath(msbuildPath, MSBUILD_FILE_NAME);
+        return BDSInstallation.getMsbuildPath(channel, environment);
     }
 
     /**
@@ -0,0 +1,175 @@
+/*
+ * BDSExecutorIsolation
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import hudson.FilePath;
+import hudson.model.Node;
+
+/**
+ * Directories of a RAD Studio installation private to an executor of a
+ * node.  The common directory, to which packages are written by default,
+ * and the temporary directory are replaced with those under the root
+ * directory of the node so that builds on the other executors do not
+ * collide with each other.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class BDSExecutorIsolation {
+
+    /**
+     * Name of the directory under the root directory of a node in which
+     * the directories of the executors are created.
+     */
+    public static final String DIRECTORY_NAME = "bds-executors";
+
+    private static final String COMMON_DIRECTORY_NAME = "Common";
+
+    private static final String BPL_DIRECTORY_NAME = "Bpl";
+
+    private static final String DCP_DIRECTORY_NAME = "Dcp";
+
+    private static final String TEMP_DIRECTORY_NAME = "Temp";
+
+    private final FilePath directory;
+
+    /**
+     * Constructs this object.
+     *
+     * @param directory directory of the executor
+     */
+    public BDSExecutorIsolation(FilePath directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the isolation for an executor of a node.
+     *
+     * @param node node
+     * @param installationName name of the RAD Studio installation, or
+     * <code>null</code>
+     * @param number number of the executor
+     * @return {@link BDSExecutorIsolation} object, or <code>null</code> if
+     * the node is offline
+     */
+    public static BDSExecutorIsolation forExecutor(Node node,
+            String installationName, int number) {
+        FilePath root = node.getRootPath();
+        if (root == null) {
+            return null;
+        }
+        return new BDSExecutorIsolation(root.child(DIRECTORY_NAME).child(
+                getDirectoryName(installationName, number)));
+    }
+
+    /**
+     * Returns the name of the directory of an executor.
+     *
+     * @param installationName name of the RAD Studio installation, or
+     * <code>null</code>
+     * @param number number of the executor
+     * @return name of the directory
+     */
+    protected static String getDirectoryName(String installationName,
+            int number) {
+        StringBuilder name = new StringBuilder();
+        if (installationName != null) {
+            for (char c : installationName.toCharArray()) {
+                if (Character.isLetterOrDigit(c) || c == '.' || c == '-') {
+                    name.append(c);
+                } else {
+                    name.append('_');
+                }
+            }
+        }
+        if (name.length() == 0) {
+            name.append("default");
+        }
+        return name.append('@').append(number).toString();
+    }
+
+    /**
+     * Returns the directory of the executor.
+     *
+     * @return directory of the executor
+     */
+    public FilePath getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Returns the environment variables which point to the directories of
+     * the executor.
+     *
+     * @return map of the environment variables
+     */
+    public Map<String, String> getVariables() {
+        return getVariables(directory.getRemote());
+    }
+
+    /**
+     * Returns the environment variables which point to the directories
+     * under a directory.
+     *
+     * @param directory path to the directory of an executor on the node
+     * @return map of the environment variables
+     */
+    protected static Map<String, String> getVariables(String directory) {
+        String common = directory + "\\" + COMMON_DIRECTORY_NAME;
+        String temp = directory + "\\" + TEMP_DIRECTORY_NAME;
+        Map<String, String> variables = new LinkedHashMap<String, String>();
+        variables.put("BDSCOMMONDIR", common);
+        // For projects which do not derive them from BDSCOMMONDIR.
+        variables.put("DCC_BplOutput", common + "\\" + BPL_DIRECTORY_NAME);
+        variables.put("DCC_DcpOutput", common + "\\" + DCP_DIRECTORY_NAME);
+        variables.put("TEMP", temp);
+        variables.put("TMP", temp);
+        return variables;
+    }
+
+    /**
+     * Creates the directories of the executor if they do not exist.
+     *
+     * @throws IOException if an I/O exception has occurred
+     * @throws InterruptedException if interrupted
+     */
+    public void prepare() throws IOException, InterruptedException {
+        FilePath common = directory.child(COMMON_DIRECTORY_NAME);
+        common.child(BPL_DIRECTORY_NAME).mkdirs();
+        common.child(DCP_DIRECTORY_NAME).mkdirs();
+        directory.child(TEMP_DIRECTORY_NAME).mkdirs();
+    }
+
+    /**
+     * Deletes the temporary files of the executor.  Packages are kept for
+     * later build steps.
+     *
+     * @throws IOException if an I/O exception has occurred
+     * @throws InterruptedException if interrupted
+     */
+    public void cleanUp() throws IOException, InterruptedException {
+        FilePath temp = directory.child(TEMP_DIRECTORY_NAME);
+        if (temp.exists()) {
+            temp.deleteContents();
+        }
+    }
+}
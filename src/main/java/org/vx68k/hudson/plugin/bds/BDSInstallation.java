@@ -20,12 +20,16 @@ package org.vx68k.hudson.plugin.bds;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import hudson.EnvVars;
 import hudson.Extension;
 import hudson.FilePath;
 import hudson.Launcher;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
 import hudson.model.AbstractBuild;
 import hudson.model.EnvironmentSpecific;
 import hudson.model.Hudson;
@@ -35,6 +39,7 @@ import hudson.remoting.VirtualChannel;
 import hudson.slaves.NodeSpecific;
 import hudson.tools.ToolDescriptor;
 import hudson.tools.ToolInstallation;
+import hudson.tools.ToolLocationNodeProperty;
 import hudson.tools.ToolProperty;
 import net.sf.json.JSONObject;
 import org.kohsuke.stapler.DataBoundConstructor;
@@ -55,6 +60,13 @@ public class BDSInstallation extends ToolInstallation
     private static final String BIN_DIRECTORY_NAME = "bin";
     private static final String BATCH_FILE_NAME = "rsvars.bat";
 
+    /**
+     * Indicates whether a remote batch file shall be read by a
+     * <code>type</code> command as in the earlier versions.
+     */
+    private static final boolean USE_TYPE_COMMAND = Boolean.getBoolean(
+            BDSInstallation.class.getName() + ".useTypeCommand");
+
     /**
      * Constructs this object with immutable properties.
      *
@@ -83,12 +95,46 @@ public class BDSInstallation extends ToolInstallation
      * was found
      */
     public static BDSInstallation getInstallation(String name) {
-        for (BDSInstallation i : getInstallations()) {
-            if (i.getName() != null && i.getName().equals(name)) {
-                return i;
+        return Descriptor.getDescriptor().getInstallation(name);
+    }
+
+    /**
+     * Returns an index of RAD Studio installations by name.  The first one
+     * wins if names are duplicated.
+     * @param installations array of RAD Studio installations
+     * @return unmodifiable map from names to RAD Studio installations
+     */
+    protected static Map<String, BDSInstallation> index(
+            BDSInstallation[] installations) {
+        Map<String, BDSInstallation> index =
+                new HashMap<String, BDSInstallation>();
+        for (BDSInstallation i : installations) {
+            if (i.getName() != null && !index.containsKey(i.getName())) {
+                index.put(i.getName(), i);
             }
         }
-        return null;
+        return Collections.unmodifiableMap(index);
+    }
+
+    /**
+     * Returns the histograms of the build step timings for this installation.
+     *
+     * @return sorted map from node names to sorted maps from phase names to
+     * histograms
+     */
+    public Map<String, Map<String, BDSTimingStatistics.Histogram>>
+            getTimingStatistics() {
+        return BDSTimingStatistics.getInstance().get(getName());
+    }
+
+    /**
+     * Returns the labels of the histogram buckets for the build step
+     * timings.
+     *
+     * @return array of the labels
+     */
+    public String[] getTimingBucketLabels() {
+        return BDSTimingStatistics.getBucketLabels();
     }
 
     /**
@@ -115,7 +161,11 @@ public class BDSInstallation extends ToolInstallation
 
     /**
      * Reads the RAD Studio environment variables from the batch file which
-     * initializes a RAD Studio Command Prompt.
+     * initializes a RAD Studio Command Prompt.  The batch file is parsed on
+     * the node where it is located unless the system property
+     * <code>org.vx68k.hudson.plugin.bds.BDSInstallation.useTypeCommand</code>
+     * is <code>true</code>.  Variables read from an unchanged batch file on
+     * the same node are taken from {@link BDSVariablesCache}.
      *
      * @param build {@link AbstractBuild} object
      * @param launcher {@link Launcher} object
@@ -127,23 +177,187 @@ public class BDSInstallation extends ToolInstallation
     public Map<String, String> readVariables(AbstractBuild<?, ?> build,
             Launcher launcher, TaskListener listener)
             throws IOException, InterruptedException {
+        return readVariables(build, launcher, listener, null);
+    }
+
+    /**
+     * Reads the RAD Studio environment variables with the environment of the
+     * build already resolved.
+     *
+     * @param build {@link AbstractBuild} object
+     * @param launcher {@link Launcher} object
+     * @param listener {@link TaskListener} object
+     * @param environment environment of the build, or <code>null</code> to
+     * get it from the build if necessary
+     * @return environment variables read from the batch file
+     * @throws IOException if an I/O exception has occurred
+     * @throws InterruptedException if interrupted
+     * @see #readVariables(AbstractBuild, Launcher, TaskListener)
+     */
+    public Map<String, String> readVariables(AbstractBuild<?, ?> build,
+            Launcher launcher, TaskListener listener, EnvVars environment)
+            throws IOException, InterruptedException {
+        return readVariables(build.getBuiltOnStr(),
+                getBatchFile(launcher.getChannel()), build, launcher,
+                listener, environment);
+    }
+
+    /**
+     * Reads the RAD Studio environment variables on a node outside of any
+     * build.  The batch file is always parsed on the node, and the variables
+     * are put into {@link BDSVariablesCache} for later builds.
+     *
+     * @param node node
+     * @param listener {@link TaskListener} object
+     * @return environment variables read from the batch file, or
+     * <code>null</code> if the node is offline
+     * @throws IOException if an I/O exception has occurred
+     * @throws InterruptedException if interrupted
+     */
+    public Map<String, String> readVariables(Node node, TaskListener listener)
+            throws IOException, InterruptedException {
+        VirtualChannel channel = node.getChannel();
+        if (channel == null) {
+            // A {@link FilePath} without a channel is local to the controller.
+            return null;
+        }
+        return readVariables(node.getNodeName(), getBatchFile(channel), null,
+                null, listener, null);
+    }
+
+    private Map<String, String> readVariables(String nodeName,
+            FilePath batchFile, AbstractBuild<?, ?> build, Launcher launcher,
+            TaskListener listener, EnvVars environment)
+            throws IOException, InterruptedException {
         if (getHome().isEmpty()) {
             listener.error(Messages.getHomeIsEmptyMessage());
             return null;
         }
 
-        InputStream batchStream = BDSUtilities.getInputStream(build,
-                launcher, listener, getBatchFile(launcher.getChannel()));
-        if (batchStream == null) {
-            // Any error messages must already be printed.
+        BDSVariablesCache cache = BDSVariablesCache.getInstance();
+        String path = batchFile.getRemote();
+        long length = -1;
+        long lastModified = -1;
+        BDSVariablesCache.Entry entry = cache.getEntry(nodeName, path);
+        if (entry != null) {
+            length = entry.getLength();
+            lastModified = entry.getLastModified();
+        }
+
+        boolean typed = USE_TYPE_COMMAND && build != null;
+        // A single call validates the cache and parses the batch file.
+        BDSUtilities.BatchVariables read = batchFile.act(
+                BDSUtilities.getVariablesReader(length, lastModified, !typed));
+        if (read == null) {
+            listener.error(Messages.getBatchFileNotFoundMessage(path));
+            return null;
+        }
+        Map<String, String> variables = cache.get(nodeName, path,
+                read.getLength(), read.getLastModified());
+        if (variables != null) {
+            return variables;
+        }
+
+        if (typed) {
+            InputStream batchStream = BDSUtilities.getInputStream(build,
+                    launcher, listener, batchFile, environment);
+            if (batchStream == null) {
+                // Any error messages must already be printed.
+                return null;
+            }
+            // Decoded here in the encoding of the node.
+            variables = BDSUtilities.readVariables(batchStream,
+                    BDSUtilities.getBatchEncoding(launcher.getChannel()));
+        } else {
+            variables = read.getVariables();
+            if (variables == null) {
+                // The cache has been cleared since the call.
+                read = batchFile.act(
+                        BDSUtilities.getVariablesReader(-1, -1, true));
+                if (read == null) {
+                    listener.error(Messages.getBatchFileNotFoundMessage(
+                            path));
+                    return null;
+                }
+                variables = read.getVariables();
+            }
+        }
+        return cache.put(nodeName, path, read.getLength(),
+                read.getLastModified(), variables);
+    }
+
+    /**
+     * Returns the file path to the MSBuild executable used by RAD Studio.
+     *
+     * @param channel {@link VirtualChannel} object for {@link FilePath}
+     * @param variables RAD Studio environment variables
+     * @return file path to a MSBuild executable, or <code>null</code> if it
+     * cannot be determined
+     */
+    public static FilePath getMsbuildPath(VirtualChannel channel,
+            Map<String, String> variables) {
+        String frameworkDir = variables.get("FrameworkDir");
+        if (frameworkDir == null) {
+            return null;
+        }
+
+        // RAD Stduio sets FrameworkDir including FrameworkVersion.
+        FilePath msbuildPath = new FilePath(channel, frameworkDir);
+        return new FilePath(msbuildPath,
+                AbstractMsbuildBuilder.MSBUILD_FILE_NAME);
+    }
+
+    /**
+     * Returns the BDS version of this installation taken from the last
+     * element of its home directory, such as <code>17.0</code> of
+     * <code>C:\Program Files (x86)\Embarcadero\Studio\17.0</code>.
+     *
+     * @return BDS version, or <code>null</code> if unknown
+     */
+    public String getVersion() {
+        String home = getHome();
+        if (home == null) {
             return null;
         }
+        String[] elements = home.split("[\\\\/]+");
+        if (elements.length == 0) {
+            return null;
+        }
+        String version = elements[elements.length - 1];
+        if (!BDSInstallationDiscovery.isVersion(version)) {
+            return null;
+        }
+        return version;
+    }
 
-        return BDSUtilities.readVariables(batchStream);
+    /**
+     * Returns the installations discovered on a node.
+     *
+     * @param node node
+     * @param scan <code>true</code> to scan the node unless the discovered
+     * installations are cached
+     * @return map from BDS versions to root directories, or
+     * <code>null</code> if not cached and not scanned
+     * @throws IOException if an I/O exception has occurred
+     * @throws InterruptedException if interrupted
+     */
+    protected static Map<String, String> getDiscovered(Node node,
+            boolean scan) throws IOException, InterruptedException {
+        BDSInstallationDiscovery discovery =
+                BDSInstallationDiscovery.getInstance();
+        if (scan) {
+            return discovery.getInstallations(node);
+        }
+        return discovery.get(node.getNodeName(), System.currentTimeMillis());
     }
 
     /**
      * Returns a {@link NodeSpecific} version of this object.
+     * A tool location configured for the node comes first, and then the
+     * installation of the same BDS version found by
+     * {@link BDSInstallationDiscovery}.
+     * Resolved installations are taken from {@link BDSNodeInstallationCache}
+     * while the node and this object are unchanged.
      *
      * @param node node for which the return value is specialized.
      * @param listener a {@link TaskListener} object
@@ -154,8 +368,53 @@ public class BDSInstallation extends ToolInstallation
     @Override
     public BDSInstallation forNode(Node node, TaskListener listener)
             throws IOException, InterruptedException {
-        return new BDSInstallation(getName(), translateFor(node, listener),
-                getProperties().toList());
+        BDSNodeInstallationCache cache = BDSNodeInstallationCache.getInstance();
+        BDSInstallation installation = cache.get(node, this);
+        if (installation == null) {
+            installation = resolve(node, listener, true);
+            cache.put(node, this, installation);
+        }
+        return installation;
+    }
+
+    /**
+     * Returns a {@link NodeSpecific} version of this object without scanning
+     * the node.  Installations discovered on the node are used only if they
+     * are cached, and the result is not cached.
+     *
+     * @param node node for which the return value is specialized.
+     * @param listener a {@link TaskListener} object
+     * @return {@link NodeSpecific} copy of this object, or <code>null</code>
+     * if its home directory depends on a discovery not made yet
+     * @throws IOException if an I/O exception has occurred
+     * @throws InterruptedException if interrupted
+     */
+    public BDSInstallation forNodeWithoutScan(Node node,
+            TaskListener listener) throws IOException, InterruptedException {
+        BDSInstallation installation =
+                BDSNodeInstallationCache.getInstance().get(node, this);
+        if (installation == null) {
+            installation = resolve(node, listener, false);
+        }
+        return installation;
+    }
+
+    private BDSInstallation resolve(Node node, TaskListener listener,
+            boolean scan) throws IOException, InterruptedException {
+        String home = ToolLocationNodeProperty.getToolHome(node, this,
+                listener);
+        String version = getVersion();
+        if (home == null && version != null) {
+            Map<String, String> discovered = getDiscovered(node, scan);
+            if (discovered == null) {
+                return null;
+            }
+            home = discovered.get(version);
+        }
+        if (home == null) {
+            home = translateFor(node, listener);
+        }
+        return new BDSInstallation(getName(), home, getProperties().toList());
     }
 
     /**
@@ -167,8 +426,12 @@ public class BDSInstallation extends ToolInstallation
      */
     @Override
     public BDSInstallation forEnvironment(EnvVars environment) {
-        return new BDSInstallation(getName(), environment.expand(getHome()),
-                getProperties().toList());
+        String home = environment.expand(getHome());
+        if (home == null || home.equals(getHome())) {
+            // Nothing to expand.
+            return this;
+        }
+        return new BDSInstallation(getName(), home, getProperties().toList());
     }
 
     /**
@@ -179,6 +442,16 @@ public class BDSInstallation extends ToolInstallation
     public static final class Descriptor
             extends ToolDescriptor<BDSInstallation> {
 
+        /**
+         * Installations and their index published for lock-free reads.
+         */
+        private transient volatile Snapshot snapshot;
+
+        /**
+         * Indicates whether the legacy installations have been considered.
+         */
+        private transient volatile boolean migrated = false;
+
         /**
          * Constructs this object by loading the saved installations.
          */
@@ -187,6 +460,8 @@ public class BDSInstallation extends ToolInstallation
             // when there is no configuration.
             setInstallations();
             load();
+            // Loading does not go through {@link #setInstallations}.
+            snapshot = new Snapshot(super.getInstallations());
         }
 
         /**
@@ -197,25 +472,64 @@ public class BDSInstallation extends ToolInstallation
             return Hudson.getInstance().getDescriptorByType(Descriptor.class);
         }
 
-        @Override
-        public BDSInstallation[] getInstallations() {
-            BDSInstallation[] installations;
-            synchronized (this) {
-                installations = super.getInstallations();
-                if (installations.length == 0) {
-                    org.vx68k.jenkins.plugin.bds.BDSInstallation[] olds =
-                            org.vx68k.jenkins.plugin.bds.BDSInstallation
-                                    .getInstallations();
-                    installations = new BDSInstallation[olds.length];
+        /**
+         * Migrates the legacy installations at startup.
+         */
+        @Initializer(after = InitMilestone.EXTENSIONS_AUGMENTED)
+        public static void migrateAtStartup() {
+            getDescriptor().migrate();
+        }
+
+        /**
+         * Converts and saves the legacy installations once if there is no
+         * installation.
+         */
+        protected synchronized void migrate() {
+            if (migrated) {
+                return;
+            }
+            if (snapshot.installations.length == 0) {
+                org.vx68k.jenkins.plugin.bds.BDSInstallation[] olds =
+                        org.vx68k.jenkins.plugin.bds.BDSInstallation
+                                .getInstallations();
+                if (olds.length != 0) {
+                    BDSInstallation[] installations =
+                            new BDSInstallation[olds.length];
                     for (int i = 0; i != installations.length; i += 1) {
                         installations[i] = olds[i].convert();
                     }
-
-                    // Keeps the migrated installations without saving.
                     setInstallations(installations);
+                    save();
                 }
             }
-            return installations;
+            migrated = true;
+        }
+
+        @Override
+        public BDSInstallation[] getInstallations() {
+            if (!migrated) {
+                migrate();
+            }
+            return snapshot.installations.clone();
+        }
+
+        /**
+         * Returns the installation identified by a name without locking.
+         * @param name name of the installation
+         * @return installation, or <code>null</code> if not found
+         */
+        public BDSInstallation getInstallation(String name) {
+            if (!migrated) {
+                migrate();
+            }
+            return snapshot.index.get(name);
+        }
+
+        @Override
+        public void setInstallations(BDSInstallation... installations) {
+            super.setInstallations(installations);
+            snapshot = new Snapshot(installations.clone());
+            BDSNodeInstallationCache.getInstance().clear();
         }
 
         @Override
@@ -224,6 +538,8 @@ public class BDSInstallation extends ToolInstallation
             boolean ready = super.configure(req, json);
             if (ready) {
                 save();
+                // Installations may have been changed.
+                BDSVariablesCache.getInstance().clear();
             }
             return ready;
         }
@@ -248,4 +564,18 @@ public class BDSInstallation extends ToolInstallation
             return "RAD Studio";
         }
     }
+
+    /**
+     * Immutable array of installations and its index.
+     */
+    private static final class Snapshot {
+
+        private final BDSInstallation[] installations;
+        private final Map<String, BDSInstallation> index;
+
+        Snapshot(BDSInstallation[] installations) {
+            this.installations = installations;
+            this.index = index(installations);
+        }
+    }
 }
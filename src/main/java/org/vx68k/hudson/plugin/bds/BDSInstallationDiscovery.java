@@ -0,0 +1,407 @@
+/*
+ * BDSInstallationDiscovery
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Computer;
+import hudson.model.Hudson;
+import hudson.model.Node;
+import hudson.model.TaskListener;
+import hudson.remoting.Callable;
+import hudson.remoting.VirtualChannel;
+
+/**
+ * Discovery of the RAD Studio installations on nodes.
+ * Each Windows node is scanned for the registry keys written by the RAD
+ * Studio installers and for the default installation directories, and the
+ * result is cached per node for a limited time.  Discovered installations
+ * are mapped by the BDS version such as <code>17.0</code>.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class BDSInstallationDiscovery {
+
+    /**
+     * Default time to live of the cached results in milliseconds.
+     */
+    public static final long DEFAULT_TTL = TimeUnit.HOURS.toMillis(1);
+
+    private static final Logger LOGGER =
+            Logger.getLogger(BDSInstallationDiscovery.class.getName());
+
+    private static final BDSInstallationDiscovery INSTANCE =
+            new BDSInstallationDiscovery(DEFAULT_TTL);
+
+    /**
+     * Registry keys under which each RAD Studio version has a subkey.
+     */
+    private static final String[] REGISTRY_KEYS = {
+        "HKLM\\SOFTWARE\\Wow6432Node\\Embarcadero\\BDS",
+        "HKLM\\SOFTWARE\\Embarcadero\\BDS",
+        "HKLM\\SOFTWARE\\Wow6432Node\\CodeGear\\BDS",
+        "HKLM\\SOFTWARE\\CodeGear\\BDS",
+        "HKLM\\SOFTWARE\\Wow6432Node\\Borland\\BDS",
+        "HKLM\\SOFTWARE\\Borland\\BDS",
+    };
+
+    /**
+     * Directories under the program files directories in which each RAD
+     * Studio version has a subdirectory.
+     */
+    private static final String[] DEFAULT_DIRECTORIES = {
+        "Embarcadero\\Studio",
+        "Embarcadero\\RAD Studio",
+        "CodeGear\\RAD Studio",
+    };
+
+    private static final Pattern KEY_PATTERN = Pattern.compile(
+            "^HKEY_\\S*\\\\BDS\\\\(\\d+\\.\\d+)\\s*$");
+
+    private static final Pattern ROOT_DIR_PATTERN = Pattern.compile(
+            "^\\s+RootDir\\s+REG_(?:EXPAND_)?SZ\\s+(.+?)\\s*$");
+
+    private static final Pattern VERSION_PATTERN = Pattern.compile(
+            "\\d+\\.\\d+");
+
+    private final long ttl;
+
+    private final ConcurrentMap<String, Entry> entries =
+            new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * Constructs this object.
+     *
+     * @param ttl time to live of the cached results in milliseconds
+     */
+    protected BDSInstallationDiscovery(long ttl) {
+        this.ttl = ttl;
+    }
+
+    /**
+     * Returns the shared instance.
+     *
+     * @return shared instance
+     */
+    public static BDSInstallationDiscovery getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns <code>true</code> if a string looks like a BDS version.
+     *
+     * @param version string
+     * @return <code>true</code> if it is a BDS version
+     */
+    public static boolean isVersion(String version) {
+        return version != null && VERSION_PATTERN.matcher(version).matches();
+    }
+
+    /**
+     * Returns the installations discovered on a node, scanning it if there
+     * is no valid cached result.
+     *
+     * @param node node
+     * @return unmodifiable map from BDS versions to root directories, which
+     * is empty if the node is offline
+     * @throws IOException if an I/O exception has occurred
+     * @throws InterruptedException if interrupted
+     */
+    public Map<String, String> getInstallations(Node node)
+            throws IOException, InterruptedException {
+        long now = System.currentTimeMillis();
+        Map<String, String> installations =
+                get(node.getNodeName(), now);
+        if (installations == null) {
+            installations = scan(node, now);
+        }
+        return installations;
+    }
+
+    /**
+     * Returns the cached installations of a node if they are still valid.
+     * An expired entry is kept to be compared with the next discovery.
+     *
+     * @param nodeName name of the node (empty for the master)
+     * @param now current time in milliseconds
+     * @return cached installations, or <code>null</code> if there is no
+     * valid entry
+     */
+    public Map<String, String> get(String nodeName, long now) {
+        Entry entry = entries.get(nodeName);
+        if (entry == null || now - entry.time >= ttl) {
+            return null;
+        }
+        return entry.installations;
+    }
+
+    /**
+     * Puts the installations discovered on a node.
+     *
+     * @param nodeName name of the node (empty for the master)
+     * @param installations map from BDS versions to root directories
+     * @param now time of the discovery in milliseconds
+     * @return <code>true</code> if the installations differ from the
+     * previous result, or if they are the first result and not empty
+     */
+    public boolean put(String nodeName, Map<String, String> installations,
+            long now) {
+        Map<String, String> copy = Collections.unmodifiableMap(
+                new TreeMap<String, String>(installations));
+        Entry previous = entries.put(nodeName, new Entry(now, copy));
+        if (previous == null) {
+            // Nothing can have been resolved from an empty result.
+            return !copy.isEmpty();
+        }
+        return !previous.installations.equals(copy);
+    }
+
+    /**
+     * Removes all the entries.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Scans a node and caches the result.
+     *
+     * @param node node
+     * @param now current time in milliseconds
+     * @return unmodifiable map from BDS versions to root directories
+     * @throws IOException if an I/O exception has occurred
+     * @throws InterruptedException if interrupted
+     */
+    protected Map<String, String> scan(Node node, long now)
+            throws IOException, InterruptedException {
+        VirtualChannel channel = node.getChannel();
+        if (channel == null) {
+            // Offline nodes are scanned when they are online.
+            return Collections.emptyMap();
+        }
+        Map<String, String> installations = channel.call(new Scanner());
+        if (put(node.getNodeName(), installations, now)) {
+            // Installations resolved from the previous result are stale.
+            BDSNodeInstallationCache.getInstance().clear();
+            BDSInstallationRouting.resetLabels();
+        }
+        return get(node.getNodeName(), now);
+    }
+
+    /**
+     * Scans nodes in parallel and waits for all of them.  Any failure is
+     * logged.
+     *
+     * @param nodes nodes
+     * @throws InterruptedException if interrupted
+     */
+    public void refresh(Collection<? extends Node> nodes)
+            throws InterruptedException {
+        final long now = System.currentTimeMillis();
+        List<Future<?>> futures = new ArrayList<Future<?>>(nodes.size());
+        for (final Node node : nodes) {
+            futures.add(Computer.threadPoolForRemoting.submit(
+                    new java.util.concurrent.Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    scan(node, now);
+                    return null;
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException exception) {
+                LOGGER.log(Level.WARNING, "Failed to discover installations",
+                        exception.getCause());
+            }
+        }
+    }
+
+    /**
+     * Parses the output of <code>reg query</code> for the
+     * <code>RootDir</code> values.
+     *
+     * @param lines output lines
+     * @param installations map to which the versions and the root
+     * directories are put
+     */
+    protected static void parseRegistryOutput(Iterable<String> lines,
+            Map<String, String> installations) {
+        String version = null;
+        for (String line : lines) {
+            Matcher key = KEY_PATTERN.matcher(line);
+            if (key.matches()) {
+                version = key.group(1);
+                continue;
+            }
+            Matcher rootDir = ROOT_DIR_PATTERN.matcher(line);
+            if (rootDir.matches() && version != null
+                    && !installations.containsKey(version)) {
+                String directory = rootDir.group(1);
+                while (directory.endsWith("\\")) {
+                    directory = directory.substring(0,
+                            directory.length() - 1);
+                }
+                installations.put(version, directory);
+            }
+        }
+    }
+
+    /**
+     * Cache entry.
+     */
+    private static final class Entry {
+
+        private final long time;
+        private final Map<String, String> installations;
+
+        Entry(long time, Map<String, String> installations) {
+            this.time = time;
+            this.installations = installations;
+        }
+    }
+
+    /**
+     * Callable which scans the node on which it is called.  Directories
+     * without <code>bin\rsvars.bat</code> are ignored.
+     */
+    private static final class Scanner
+            implements Callable<Map<String, String>, IOException> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Map<String, String> call() throws IOException {
+            Map<String, String> installations =
+                    new TreeMap<String, String>();
+            if (File.pathSeparatorChar != ';') {
+                // RAD Studio runs only on Windows.
+                return installations;
+            }
+
+            Map<String, String> found = new TreeMap<String, String>();
+            for (String key : REGISTRY_KEYS) {
+                parseRegistryOutput(query(key), found);
+            }
+            for (String programFiles : new String[] {
+                    System.getenv("ProgramFiles(x86)"),
+                    System.getenv("ProgramFiles")}) {
+                if (programFiles == null) {
+                    continue;
+                }
+                for (String name : DEFAULT_DIRECTORIES) {
+                    File[] files = new File(programFiles, name).listFiles();
+                    if (files == null) {
+                        continue;
+                    }
+                    for (File file : files) {
+                        if (isVersion(file.getName())
+                                && !found.containsKey(file.getName())) {
+                            found.put(file.getName(), file.getPath());
+                        }
+                    }
+                }
+            }
+            for (Map.Entry<String, String> entry : found.entrySet()) {
+                File batchFile = new File(entry.getValue(),
+                        "bin\\rsvars.bat");
+                if (batchFile.isFile()) {
+                    installations.put(entry.getKey(), entry.getValue());
+                }
+            }
+            return installations;
+        }
+
+        private static List<String> query(String key) throws IOException {
+            Process process = new ProcessBuilder(
+                    "reg", "query", key, "/s", "/v", "RootDir")
+                    .redirectErrorStream(true).start();
+            List<String> lines = new ArrayList<String>();
+            process.getOutputStream().close();
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(process.getInputStream()));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lines.add(line);
+                }
+            } finally {
+                reader.close();
+            }
+            try {
+                process.waitFor();
+            } catch (InterruptedException exception) {
+                process.destroy();
+                Thread.currentThread().interrupt();
+            }
+            // A missing key is simply not listed.
+            return lines;
+        }
+    }
+
+    /**
+     * Periodic work which rescans all the nodes before the cached results
+     * expire.  It runs in its own thread so that slow nodes do not hold up
+     * the shared timer.
+     */
+    @Extension
+    public static final class Refresher extends AsyncPeriodicWork {
+
+        public Refresher() {
+            super("RAD Studio installation discovery");
+        }
+
+        @Override
+        public long getRecurrencePeriod() {
+            return DEFAULT_TTL / 2;
+        }
+
+        @Override
+        protected void execute(TaskListener listener)
+                throws IOException, InterruptedException {
+            Hudson hudson = Hudson.getInstance();
+            List<Node> nodes = new ArrayList<Node>();
+            nodes.add(hudson);
+            nodes.addAll(hudson.getNodes());
+            getInstance().refresh(nodes);
+        }
+    }
+}
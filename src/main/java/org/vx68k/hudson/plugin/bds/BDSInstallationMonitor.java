@@ -0,0 +1,312 @@
+/*
+ * BDSInstallationMonitor
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.model.Computer;
+import hudson.model.Hudson;
+import hudson.model.Node;
+import hudson.model.TaskListener;
+import hudson.node_monitors.AbstractNodeMonitorDescriptor;
+import hudson.node_monitors.NodeMonitor;
+import hudson.remoting.Callable;
+import hudson.remoting.VirtualChannel;
+import hudson.slaves.ComputerListener;
+import org.vx68k.hudson.plugin.bds.resources.Messages;
+
+/**
+ * Node monitor which checks the RAD Studio installations on each node.
+ * For each installation, a single remoting call checks that the batch file
+ * is present and parseable and that the MSBuild executable it refers to is
+ * present, and measures how long it took on the node.  Builds are not
+ * dispatched to a node for an installation found broken there.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class BDSInstallationMonitor extends NodeMonitor {
+
+    /**
+     * Check time in milliseconds above which an installation is shown as
+     * slow.
+     */
+    public static final long SLOW_THRESHOLD = Long.getLong(
+            BDSInstallationMonitor.class.getName() + ".slowThreshold", 5000);
+
+    private static final ConcurrentMap<String, Map<String, Health>> RESULTS =
+            new ConcurrentHashMap<String, Map<String, Health>>();
+
+    /**
+     * Returns the latest result for an installation on a node.
+     *
+     * @param nodeName name of the node (empty for the master)
+     * @param installationName name of the installation
+     * @return health of the installation, or <code>null</code> if not
+     * checked
+     */
+    public static Health getHealth(String nodeName, String installationName) {
+        Map<String, Health> results = RESULTS.get(nodeName);
+        if (results == null) {
+            return null;
+        }
+        return results.get(installationName);
+    }
+
+    /**
+     * Returns <code>true</code> if an installation was found broken on a
+     * node by the latest check.
+     *
+     * @param nodeName name of the node (empty for the master)
+     * @param installationName name of the installation
+     * @return <code>true</code> if broken
+     */
+    public static boolean isBroken(String nodeName, String installationName) {
+        Health health = getHealth(nodeName, installationName);
+        return health != null && !health.isOk();
+    }
+
+    /**
+     * Removes the results of the nodes which no longer exist.
+     *
+     * @param nodeNames names of the existing nodes (empty for the master)
+     */
+    protected static void retainNodes(Collection<String> nodeNames) {
+        RESULTS.keySet().retainAll(nodeNames);
+    }
+
+    /**
+     * Checks all the installations on a node.  Each installation is checked
+     * in its home directory resolved from what is already known about the
+     * node, and skipped if that depends on a discovery not made yet.
+     *
+     * @param node node
+     * @return map from installation names to their health
+     * @throws IOException if an I/O exception has occurred
+     * @throws InterruptedException if interrupted
+     */
+    protected static Map<String, Health> check(Node node)
+            throws IOException, InterruptedException {
+        VirtualChannel channel = node.getChannel();
+        Computer computer = node.toComputer();
+        if (channel == null || computer == null) {
+            return null;
+        }
+        EnvVars environment = computer.getEnvironment();
+
+        List<String> names = new ArrayList<String>();
+        List<String> batchFiles = new ArrayList<String>();
+        for (BDSInstallation installation
+                : BDSInstallation.getInstallations()) {
+            // A discovery scan would block the monitor thread.
+            BDSInstallation resolved =
+                    installation.forNodeWithoutScan(node, TaskListener.NULL);
+            if (resolved == null) {
+                continue;
+            }
+            if (environment != null) {
+                resolved = resolved.forEnvironment(environment);
+            }
+            if (resolved.getHome() == null || resolved.getHome().isEmpty()) {
+                continue;
+            }
+            names.add(installation.getName());
+            batchFiles.add(resolved.getBatchFile(channel).getRemote());
+        }
+        if (names.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        List<Health> checked = channel.call(new Checker(names, batchFiles));
+        Map<String, Health> results = new LinkedHashMap<String, Health>();
+        for (Health health : checked) {
+            results.put(health.getName(), health);
+        }
+        results = Collections.unmodifiableMap(results);
+        RESULTS.put(node.getNodeName(), results);
+        return results;
+    }
+
+    /**
+     * Checks the batch file of an installation and the MSBuild executable it
+     * refers to on the current node.
+     *
+     * @param name name of the installation
+     * @param batchFile batch file
+     * @return description of the problem found, or <code>null</code> if none
+     */
+    protected static String checkBatchFile(String name, File batchFile) {
+        if (!batchFile.isFile()) {
+            return Messages.getBatchFileNotFoundMessage(batchFile);
+        }
+        Map<String, String> variables;
+        try {
+            variables = BDSUtilities.readVariables(
+                    new FileInputStream(batchFile));
+        } catch (IOException exception) {
+            return Messages.getBatchFileUnreadableMessage(batchFile,
+                    exception);
+        }
+        String frameworkDir = variables.get("FrameworkDir");
+        if (frameworkDir == null) {
+            return Messages.getMsbuildNotFoundMessage(name, "FrameworkDir");
+        }
+        File msbuild = new File(frameworkDir,
+                AbstractMsbuildBuilder.MSBUILD_FILE_NAME);
+        if (!msbuild.isFile()) {
+            return Messages.getMsbuildNotFoundMessage(name, msbuild);
+        }
+        return null;
+    }
+
+    /**
+     * Health of an installation on a node.
+     */
+    public static final class Health implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String name;
+        private final String problem;
+        private final long duration;
+
+        Health(String name, String problem, long duration) {
+            this.name = name;
+            this.problem = problem;
+            this.duration = duration;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the problem found.
+         *
+         * @return description of the problem, or <code>null</code> if none
+         */
+        public String getProblem() {
+            return problem;
+        }
+
+        /**
+         * Returns the time taken by the check on the node.
+         *
+         * @return duration in milliseconds
+         */
+        public long getDuration() {
+            return duration;
+        }
+
+        public boolean isOk() {
+            return problem == null;
+        }
+
+        public boolean isSlow() {
+            return duration > SLOW_THRESHOLD;
+        }
+    }
+
+    /**
+     * Callable which checks the installations on the node on which it is
+     * called.
+     */
+    private static final class Checker
+            implements Callable<List<Health>, IOException> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<String> names;
+        private final List<String> batchFiles;
+
+        Checker(List<String> names, List<String> batchFiles) {
+            this.names = names;
+            this.batchFiles = batchFiles;
+        }
+
+        @Override
+        public List<Health> call() throws IOException {
+            List<Health> results = new ArrayList<Health>(names.size());
+            for (int i = 0; i != names.size(); i += 1) {
+                long start = System.nanoTime();
+                String problem = checkBatchFile(names.get(i),
+                        new File(batchFiles.get(i)));
+                results.add(new Health(names.get(i), problem,
+                        TimeUnit.NANOSECONDS.toMillis(
+                                System.nanoTime() - start)));
+            }
+            return results;
+        }
+    }
+
+    /**
+     * Removes the results of deleted nodes when the node configuration
+     * changes.
+     */
+    @Extension
+    public static final class Janitor extends ComputerListener {
+
+        @Override
+        public void onConfigurationChange() {
+            Hudson hudson = Hudson.getInstance();
+            List<String> nodeNames = new ArrayList<String>();
+            nodeNames.add(hudson.getNodeName());
+            for (Node node : hudson.getNodes()) {
+                nodeNames.add(node.getNodeName());
+            }
+            retainNodes(nodeNames);
+        }
+    }
+
+    /**
+     * Describes {@link BDSInstallationMonitor}.
+     */
+    @Extension
+    public static final class Descriptor
+            extends AbstractNodeMonitorDescriptor<Map<String, Health>> {
+
+        @Override
+        protected Map<String, Health> monitor(Computer computer)
+                throws IOException, InterruptedException {
+            Node node = computer.getNode();
+            if (node == null) {
+                return null;
+            }
+            return check(node);
+        }
+
+        @Override
+        public String getDisplayName() {
+            return Messages.getInstallationMonitorDisplayName();
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * BDSInstallationRouting
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import hudson.Extension;
+import hudson.model.Hudson;
+import hudson.model.Label;
+import hudson.model.LabelFinder;
+import hudson.model.Node;
+import hudson.model.Project;
+import hudson.model.Queue;
+import hudson.model.labels.LabelAtom;
+import hudson.model.queue.CauseOfBlockage;
+import hudson.model.queue.QueueTaskDispatcher;
+import hudson.tasks.Builder;
+import hudson.tools.ToolLocationNodeProperty;
+import org.vx68k.hudson.plugin.bds.resources.Messages;
+
+/**
+ * Routing of builds to the nodes which have the RAD Studio versions they use.
+ * Nodes get a label such as <code>bds-17.0</code> for each BDS version
+ * found by {@link BDSInstallationDiscovery}, and builds using a version are
+ * not dispatched to nodes on which it is known to be missing or on which
+ * {@link BDSInstallationMonitor} found the installation broken.  Only the
+ * cached results are used so that the queue is never blocked by scanning.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class BDSInstallationRouting {
+
+    /**
+     * Prefix of the labels for BDS versions.
+     */
+    public static final String LABEL_PREFIX = "bds-";
+
+    /**
+     * Returns the label name for a BDS version.
+     *
+     * @param version BDS version
+     * @return label name
+     */
+    public static String getLabelName(String version) {
+        return LABEL_PREFIX + version;
+    }
+
+    /**
+     * Returns the cached installations discovered on a node.
+     *
+     * @param node node
+     * @return map from BDS versions to root directories, or
+     * <code>null</code> if the node has not been scanned
+     */
+    protected static Map<String, String> getDiscovered(Node node) {
+        return BDSInstallationDiscovery.getInstance().get(
+                node.getNodeName(), System.currentTimeMillis());
+    }
+
+    /**
+     * Resets all the labels so that the labels of newly discovered BDS
+     * versions take effect.
+     */
+    public static void resetLabels() {
+        Hudson hudson = Hudson.getInstance();
+        if (hudson == null) {
+            return;
+        }
+        for (Label label : hudson.getLabels()) {
+            label.reset();
+        }
+    }
+
+    /**
+     * Returns <code>false</code> if an installation is known to be missing
+     * on a node.  An installation which {@link BDSInstallationMonitor} found
+     * working on the node is available even if it was not discovered, for
+     * example when it is at the configured home on a non-standard path or
+     * was copied without its registry keys.
+     *
+     * @param installation installation
+     * @param discovered installations discovered on the node, or
+     * <code>null</code> if unknown
+     * @param toolLocation home configured on the node for the installation,
+     * or <code>null</code> if not configured
+     * @param validated <code>true</code> if the installation was found
+     * working on the node
+     * @return <code>false</code> if the installation is missing
+     */
+    protected static boolean isAvailable(BDSInstallation installation,
+            Map<String, String> discovered, String toolLocation,
+            boolean validated) {
+        if (validated || toolLocation != null || discovered == null) {
+            return true;
+        }
+        String version = installation.getVersion();
+        return version == null || discovered.containsKey(version);
+    }
+
+    /**
+     * Returns an installation used by a build step of a task which
+     * is missing or broken on a node.
+     *
+     * @param node node
+     * @param task task
+     * @return missing or broken installation, or <code>null</code> if none
+     */
+    protected static BDSInstallation getMissingInstallation(Node node,
+            Queue.Task task) {
+        if (!(task instanceof Project)) {
+            return null;
+        }
+        Map<String, String> discovered = getDiscovered(node);
+        ToolLocationNodeProperty property = null;
+        if (node.getNodeProperties() != null) {
+            property = node.getNodeProperties().get(
+                    ToolLocationNodeProperty.class);
+        }
+        for (Builder builder : ((Project<?, ?>) task).getBuilders()) {
+            if (builder instanceof BDSBuilder) {
+                BDSInstallation installation = BDSInstallation.getInstallation(
+                        ((BDSBuilder) builder).getInstallationName());
+                if (installation == null) {
+                    continue;
+                }
+                String toolLocation = null;
+                if (property != null) {
+                    toolLocation = property.getHome(installation);
+                }
+                BDSInstallationMonitor.Health health =
+                        BDSInstallationMonitor.getHealth(node.getNodeName(),
+                                installation.getName());
+                if (health != null && !health.isOk()) {
+                    return installation;
+                }
+                if (!isAvailable(installation, discovered, toolLocation,
+                        health != null)) {
+                    return installation;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Label finder which gives each node the labels of the discovered BDS
+     * versions.
+     */
+    @Extension
+    public static final class Finder extends LabelFinder {
+
+        @Override
+        public Collection<LabelAtom> findLabels(Node node) {
+            Map<String, String> discovered = getDiscovered(node);
+            if (discovered == null || discovered.isEmpty()) {
+                return Collections.emptySet();
+            }
+            List<LabelAtom> labels =
+                    new ArrayList<LabelAtom>(discovered.size());
+            for (String version : discovered.keySet()) {
+                labels.add(LabelAtom.get(getLabelName(version)));
+            }
+            return labels;
+        }
+    }
+
+    /**
+     * Queue task dispatcher which keeps builds off the nodes missing the
+     * installations they use.
+     */
+    @Extension
+    public static final class Dispatcher extends QueueTaskDispatcher {
+
+        @Override
+        public CauseOfBlockage canTake(Node node, Queue.Task task) {
+            final BDSInstallation installation =
+                    getMissingInstallation(node, task);
+            if (installation == null) {
+                return null;
+            }
+            final String nodeName = node.getDisplayName();
+            return new CauseOfBlockage() {
+                @Override
+                public String getShortDescription() {
+                    return Messages.getInstallationMissingMessage(
+                            installation.getName(), nodeName);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * BDSIsolationOptions
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import hudson.Extension;
+import hudson.model.AbstractDescribableImpl;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.vx68k.hudson.plugin.bds.resources.Messages;
+
+/**
+ * Options to isolate the RAD Studio directories of the executors of a node.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class BDSIsolationOptions
+        extends AbstractDescribableImpl<BDSIsolationOptions> {
+
+    private final boolean executorIsolation;
+    private final boolean isolationCleanup;
+
+    /**
+     * Constructs this object with the default values.
+     */
+    public BDSIsolationOptions() {
+        this(false, false);
+    }
+
+    /**
+     * Constructs this object.
+     *
+     * @param executorIsolation <code>true</code> to give each executor of
+     * the node its own common and temporary directories
+     * @param isolationCleanup <code>true</code> to delete the temporary
+     * files of the executor after the build step
+     */
+    @DataBoundConstructor
+    public BDSIsolationOptions(boolean executorIsolation,
+            boolean isolationCleanup) {
+        this.executorIsolation = executorIsolation;
+        this.isolationCleanup = isolationCleanup;
+    }
+
+    /**
+     * Returns <code>true</code> if each executor of the node shall have its
+     * own common and temporary directories.
+     *
+     * @return <code>true</code> to isolate executors
+     */
+    public boolean isExecutorIsolation() {
+        return executorIsolation;
+    }
+
+    /**
+     * Returns <code>true</code> if the temporary files of the executor shall
+     * be deleted after the build step.
+     *
+     * @return <code>true</code> to clean up the temporary files
+     */
+    public boolean isIsolationCleanup() {
+        return isolationCleanup;
+    }
+
+    /**
+     * Describes {@link BDSIsolationOptions}.
+     */
+    @Extension
+    public static final class Descriptor
+            extends hudson.model.Descriptor<BDSIsolationOptions> {
+
+        @Override
+        public String getDisplayName() {
+            return Messages.getIsolationOptionsDisplayName();
+        }
+    }
+}
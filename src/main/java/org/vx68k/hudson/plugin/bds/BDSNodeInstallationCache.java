@@ -0,0 +1,137 @@
+/*
+ * BDSNodeInstallationCache
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import hudson.Extension;
+import hudson.model.Node;
+import hudson.slaves.ComputerListener;
+
+/**
+ * Cache of RAD Studio installations resolved for nodes.
+ * Each entry is keyed by a node name and an installation name, and it is
+ * valid only while both the {@link Node} object and the installation object
+ * it was resolved from are the current ones.  Since Hudson replaces these
+ * objects when they are reconfigured, changes to the node properties or to
+ * the installations make the entries stale.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class BDSNodeInstallationCache {
+
+    private static final BDSNodeInstallationCache INSTANCE =
+            new BDSNodeInstallationCache();
+
+    private final ConcurrentMap<String, Entry> entries =
+            new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * Returns the shared instance.
+     *
+     * @return shared instance
+     */
+    public static BDSNodeInstallationCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the cache key for an installation on a node.
+     *
+     * @param nodeName name of the node (empty for the master)
+     * @param name name of the installation
+     * @return cache key
+     */
+    protected static String getKey(String nodeName, String name) {
+        return nodeName + "\n" + name;
+    }
+
+    /**
+     * Returns the cached installation resolved for a node if it is still
+     * valid.
+     *
+     * @param node node
+     * @param installation installation to be resolved
+     * @return cached installation for the node, or <code>null</code> if
+     * there is no valid entry
+     */
+    public BDSInstallation get(Node node, BDSInstallation installation) {
+        String key = getKey(node.getNodeName(), installation.getName());
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.node != node || entry.source != installation) {
+            // The node or the installation has been reconfigured.
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry.resolved;
+    }
+
+    /**
+     * Puts an installation resolved for a node.
+     *
+     * @param node node
+     * @param installation installation from which it was resolved
+     * @param resolved installation for the node
+     */
+    public void put(Node node, BDSInstallation installation,
+            BDSInstallation resolved) {
+        entries.put(getKey(node.getNodeName(), installation.getName()),
+                new Entry(node, installation, resolved));
+    }
+
+    /**
+     * Removes all the entries.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Cache entry.
+     */
+    private static final class Entry {
+
+        private final Node node;
+        private final BDSInstallation source;
+        private final BDSInstallation resolved;
+
+        Entry(Node node, BDSInstallation source, BDSInstallation resolved) {
+            this.node = node;
+            this.source = source;
+            this.resolved = resolved;
+        }
+    }
+
+    /**
+     * Clears the cache when the node configuration changes, which covers
+     * the master node whose properties are updated in place.
+     */
+    @Extension
+    public static final class Invalidator extends ComputerListener {
+
+        @Override
+        public void onConfigurationChange() {
+            getInstance().clear();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * BDSNodePreparation
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.model.Computer;
+import hudson.model.Node;
+import hudson.model.TaskListener;
+import hudson.slaves.ComputerListener;
+import org.vx68k.hudson.plugin.bds.resources.Messages;
+
+/**
+ * Preparation of the RAD Studio installations on a node which has just come
+ * online.  In the background, the node is scanned by
+ * {@link BDSInstallationDiscovery}, and each installation is resolved for
+ * the node and its variables are read in parallel, so that the caches are
+ * primed before the first build on the node.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class BDSNodePreparation {
+
+    private static final Logger LOGGER =
+            Logger.getLogger(BDSNodePreparation.class.getName());
+
+    /**
+     * Prepares all the installations on a node and waits for them.
+     *
+     * @param node node
+     * @param listener {@link TaskListener} object to which the results are
+     * reported
+     * @throws InterruptedException if interrupted
+     */
+    public static void prepare(final Node node, final TaskListener listener)
+            throws InterruptedException {
+        BDSInstallationDiscovery.getInstance().refresh(
+                Collections.singletonList(node));
+
+        List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+        for (final BDSInstallation installation
+                : BDSInstallation.getInstallations()) {
+            futures.add(Computer.threadPoolForRemoting.submit(
+                    new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return prepare(node, installation, listener);
+                }
+            }));
+        }
+        for (Future<Boolean> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException exception) {
+                LOGGER.log(Level.WARNING, "Failed to prepare installation",
+                        exception.getCause());
+            }
+        }
+    }
+
+    /**
+     * Prepares an installation on a node.
+     *
+     * @param node node
+     * @param installation installation
+     * @param listener {@link TaskListener} object to which the result is
+     * reported
+     * @return <code>true</code> if the installation is ready on the node
+     * @throws IOException if an I/O exception has occurred
+     * @throws InterruptedException if interrupted
+     */
+    public static boolean prepare(Node node, BDSInstallation installation,
+            TaskListener listener) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        Computer computer = node.toComputer();
+        if (computer == null || node.getChannel() == null) {
+            return false;
+        }
+        EnvVars environment = computer.getEnvironment();
+        BDSInstallation resolved = installation.forNode(node, listener);
+        if (environment != null) {
+            resolved = resolved.forEnvironment(environment);
+        }
+
+        Map<String, String> variables =
+                resolved.readVariables(node, listener);
+        if (variables == null) {
+            // Any error messages must already be printed.
+            return false;
+        }
+        FilePath msbuildPath = BDSInstallation.getMsbuildPath(
+                node.getChannel(), variables);
+        if (msbuildPath == null || !msbuildPath.exists()) {
+            listener.error(Messages.getMsbuildNotFoundMessage(
+                    installation.getName(), msbuildPath));
+            return false;
+        }
+        listener.getLogger().println(Messages.getInstallationPreparedMessage(
+                installation.getName(), TimeUnit.NANOSECONDS.toMillis(
+                        System.nanoTime() - start)));
+        return true;
+    }
+
+    /**
+     * Computer listener which prepares the installations in the background
+     * when a node comes online.
+     */
+    @Extension
+    public static final class Listener extends ComputerListener {
+
+        @Override
+        public void onOnline(Computer computer, final TaskListener listener) {
+            final Node node = computer.getNode();
+            if (node == null) {
+                return;
+            }
+            Computer.threadPoolForRemoting.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        prepare(node, listener);
+                    } catch (InterruptedException exception) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * BDSTimingStatistics
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histograms of the phase timings of the RAD Studio build steps aggregated
+ * per installation, node and phase since Hudson started.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class BDSTimingStatistics {
+
+    /**
+     * Upper bounds of the histogram buckets in milliseconds.  The last bucket
+     * has no upper bound.
+     */
+    private static final long[] BUCKET_BOUNDS = {10, 100, 1000, 10000, 100000};
+
+    private static final BDSTimingStatistics INSTANCE =
+            new BDSTimingStatistics();
+
+    private final ConcurrentMap<String,
+            ConcurrentMap<String, ConcurrentMap<String, Histogram>>>
+            installations = new ConcurrentHashMap<String,
+                    ConcurrentMap<String, ConcurrentMap<String, Histogram>>>();
+
+    /**
+     * Returns the shared instance.
+     *
+     * @return shared instance
+     */
+    public static BDSTimingStatistics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the labels of the histogram buckets.
+     *
+     * @return array of the labels
+     */
+    public static String[] getBucketLabels() {
+        String[] labels = new String[BUCKET_BOUNDS.length + 1];
+        for (int i = 0; i != BUCKET_BOUNDS.length; i += 1) {
+            labels[i] = "< " + BUCKET_BOUNDS[i] + " ms";
+        }
+        labels[BUCKET_BOUNDS.length] =
+                ">= " + BUCKET_BOUNDS[BUCKET_BOUNDS.length - 1] + " ms";
+        return labels;
+    }
+
+    /**
+     * Adds the timings of a build step.
+     *
+     * @param installationName name of the RAD Studio installation
+     * @param step timings of the build step
+     */
+    public void add(String installationName, MsbuildTimingAction.Step step) {
+        ConcurrentMap<String, ConcurrentMap<String, Histogram>> nodes =
+                installations.get(installationName);
+        if (nodes == null) {
+            installations.putIfAbsent(installationName, new ConcurrentHashMap<
+                    String, ConcurrentMap<String, Histogram>>());
+            nodes = installations.get(installationName);
+        }
+        ConcurrentMap<String, Histogram> phases = nodes.get(step.getNodeName());
+        if (phases == null) {
+            nodes.putIfAbsent(step.getNodeName(),
+                    new ConcurrentHashMap<String, Histogram>());
+            phases = nodes.get(step.getNodeName());
+        }
+        for (MsbuildTimingAction.Phase phase : step.getPhases()) {
+            Histogram histogram = phases.get(phase.getName());
+            if (histogram == null) {
+                phases.putIfAbsent(phase.getName(), new Histogram());
+                histogram = phases.get(phase.getName());
+            }
+            histogram.add(phase.getDuration());
+        }
+    }
+
+    /**
+     * Returns the histograms for a RAD Studio installation.
+     *
+     * @param installationName name of the RAD Studio installation
+     * @return sorted map from node names to sorted maps from phase names to
+     * histograms
+     */
+    public Map<String, Map<String, Histogram>> get(String installationName) {
+        Map<String, Map<String, Histogram>> result =
+                new TreeMap<String, Map<String, Histogram>>();
+        ConcurrentMap<String, ConcurrentMap<String, Histogram>> nodes = null;
+        if (installationName != null) {
+            nodes = installations.get(installationName);
+        }
+        if (nodes != null) {
+            for (Map.Entry<String, ConcurrentMap<String, Histogram>> entry
+                    : nodes.entrySet()) {
+                result.put(entry.getKey(),
+                        new TreeMap<String, Histogram>(entry.getValue()));
+            }
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Histogram of durations.
+     */
+    public static final class Histogram {
+
+        private final AtomicLongArray counts =
+                new AtomicLongArray(BUCKET_BOUNDS.length + 1);
+
+        /**
+         * Adds a duration.
+         *
+         * @param millis duration in milliseconds
+         */
+        public void add(long millis) {
+            int i = 0;
+            while (i != BUCKET_BOUNDS.length && millis >= BUCKET_BOUNDS[i]) {
+                i += 1;
+            }
+            counts.incrementAndGet(i);
+        }
+
+        /**
+         * Returns the counts of the buckets.
+         *
+         * @return array of the counts
+         */
+        public long[] getCounts() {
+            long[] values = new long[counts.length()];
+            for (int i = 0; i != values.length; i += 1) {
+                values[i] = counts.get(i);
+            }
+            return values;
+        }
+    }
+}
@@ -21,19 +21,30 @@ package org.vx68k.hudson.plugin.bds;
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
 import java.util.Map;
-import java.util.TreeMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
 import hudson.EnvVars;
 import hudson.FilePath;
+import hudson.FilePath.FileCallable;
 import hudson.Launcher;
 import hudson.Proc;
 import hudson.model.AbstractBuild;
 import hudson.model.TaskListener;
+import hudson.remoting.Callable;
+import hudson.remoting.VirtualChannel;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
 
 /**
  * Utility methods for RAD Studio.
@@ -44,41 +55,197 @@ import hudson.model.TaskListener;
 public class BDSUtilities {
 
     /**
-     * Pattern to match a <code>set</code> command.
+     * Name of the system property to specify the character encoding of batch
+     * files.
      */
-    private static final Pattern SET_COMMAND_PATTERN =
-            Pattern.compile("\\s*@?set\\s+([^=]+)=(.*)",
-                    Pattern.CASE_INSENSITIVE);
+    private static final String BATCH_ENCODING_PROPERTY =
+            BDSUtilities.class.getName() + ".batchEncoding";
 
     /**
-     * Read RAD Studio environment variables from an input stream.
+     * Character encoding used when that of the console is unknown.
+     */
+    private static final String DEFAULT_BATCH_ENCODING = "ISO-8859-1";
+
+    /**
+     * Registry value of the OEM code page of the system.
+     */
+    private static final String[] OEM_CODE_PAGE_QUERY = {
+        "reg", "query",
+        "HKLM\\SYSTEM\\CurrentControlSet\\Control\\Nls\\CodePage",
+        "/v", "OEMCP",
+    };
+
+    /**
+     * Prefixes of the Java names of the charsets for code pages.  Those of
+     * Microsoft come first since <code>Cp932</code>, for example, is an
+     * IBM variant.
+     */
+    private static final String[] CODE_PAGE_PREFIXES = {
+        "windows-", "MS", "Cp",
+    };
+
+    /**
+     * Features of XML parsers set to read project files without resolving
+     * anything outside of them.
+     */
+    private static final String[] DISABLED_XML_FEATURES = {
+        "http://xml.org/sax/features/external-general-entities",
+        "http://xml.org/sax/features/external-parameter-entities",
+        "http://apache.org/xml/features/nonvalidating/load-external-dtd",
+    };
+
+    /**
+     * Character encoding of the OEM code page, or <code>null</code> if not
+     * queried yet.  The empty string means it is unknown.
+     */
+    private static volatile String oemEncoding = null;
+
+    /**
+     * Returns the character encoding of batch files on this JVM.  Batch files
+     * are written in the OEM code page, which is that of the console.  A JVM
+     * without a console, such as that of a node running as a service, takes
+     * the OEM code page from the registry.
      *
-     * @param stream input stream
-     * @return environment variables read from the input stream
+     * @return name of the character encoding
+     */
+    public static String getBatchEncoding() {
+        String encoding = System.getProperty(BATCH_ENCODING_PROPERTY);
+        if (encoding == null) {
+            // This property is set only if the JVM has a console.
+            encoding = System.getProperty("sun.stdout.encoding");
+        }
+        if (encoding == null) {
+            encoding = getOemEncoding();
+        }
+        if (encoding == null || !Charset.isSupported(encoding)) {
+            encoding = DEFAULT_BATCH_ENCODING;
+        }
+        return encoding;
+    }
+
+    /**
+     * Returns the character encoding of batch files on the node of a
+     * channel.
+     *
+     * @param channel {@link VirtualChannel} object for the node
+     * @return name of the character encoding
      * @throws IOException if an I/O exception has occurred
+     * @throws InterruptedException if interrupted
+     * @see #getBatchEncoding()
      */
-    public static Map<String, String> readVariables(InputStream stream)
-            throws IOException {
-        Map<String, String> variables = new TreeMap<String, String>(
-                String.CASE_INSENSITIVE_ORDER);
-        BufferedReader reader = new BufferedReader(new InputStreamReader(
-                stream, "ISO-8859-1")); // TOOD: Handle OEM character set.
+    public static String getBatchEncoding(VirtualChannel channel)
+            throws IOException, InterruptedException {
+        return channel.call(new BatchEncodingGetter());
+    }
+
+    /**
+     * Returns the character encoding of the OEM code page of this system.
+     * The registry is queried only once.
+     *
+     * @return name of the character encoding, or <code>null</code> if
+     * unknown
+     */
+    private static String getOemEncoding() {
+        String encoding = oemEncoding;
+        if (encoding == null) {
+            encoding = "";
+            if (File.pathSeparatorChar == ';') {
+                try {
+                    encoding = getCodePageEncoding(queryOemCodePage());
+                } catch (IOException exception) {
+                    // The encoding is left unknown.
+                }
+            }
+            oemEncoding = encoding;
+        }
+        if (encoding.isEmpty()) {
+            return null;
+        }
+        return encoding;
+    }
+
+    /**
+     * Returns the character encoding of a code page.
+     *
+     * @param codePage code page number, or <code>null</code>
+     * @return name of a supported character encoding, or the empty string
+     * if none
+     */
+    protected static String getCodePageEncoding(String codePage) {
+        if (codePage != null) {
+            for (String prefix : CODE_PAGE_PREFIXES) {
+                String name = prefix + codePage;
+                try {
+                    if (Charset.isSupported(name)) {
+                        return Charset.forName(name).name();
+                    }
+                } catch (IllegalCharsetNameException exception) {
+                    // Tries the next one.
+                }
+            }
+        }
+        return "";
+    }
+
+    private static String queryOemCodePage() throws IOException {
+        Process process = new ProcessBuilder(OEM_CODE_PAGE_QUERY)
+                .redirectErrorStream(true).start();
+        process.getOutputStream().close();
+        String codePage = null;
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream()));
         try {
             String line;
             while ((line = reader.readLine()) != null) {
-                Matcher setCommand = SET_COMMAND_PATTERN.matcher(line);
-                if (setCommand.matches()) {
-                    String key = setCommand.group(1);
-                    String value = setCommand.group(2);
-                    if (key.startsWith("BDS") || key.startsWith("CG_") ||
-                            key.startsWith("Framework")) {
-                        variables.put(key, value);
-                    }
+                // For example, '    OEMCP    REG_SZ    932'.
+                String[] fields = line.trim().split("\\s+");
+                if (fields.length == 3 && fields[0].equals("OEMCP")) {
+                    codePage = fields[2];
                 }
             }
         } finally {
             reader.close();
         }
+        try {
+            process.waitFor();
+        } catch (InterruptedException exception) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+        }
+        return codePage;
+    }
+
+    /**
+     * Read RAD Studio environment variables from an input stream in the
+     * character encoding of batch files.
+     *
+     * @param stream input stream
+     * @return environment variables read from the input stream
+     * @throws IOException if an I/O exception has occurred
+     * @see #getBatchEncoding
+     */
+    public static Map<String, String> readVariables(InputStream stream)
+            throws IOException {
+        return readVariables(stream, getBatchEncoding());
+    }
+
+    /**
+     * Read RAD Studio environment variables from an input stream.
+     *
+     * @param stream input stream
+     * @param encoding name of the character encoding of the input stream
+     * @return environment variables read from the input stream
+     * @throws IOException if an I/O exception has occurred
+     */
+    public static Map<String, String> readVariables(InputStream stream,
+            String encoding) throws IOException {
+        Map<String, String> variables;
+        Reader reader = new InputStreamReader(stream, encoding);
+        try {
+            variables = BDSVariablesParser.parse(reader);
+        } finally {
+            reader.close();
+        }
         // RAD Studio XE2 and earlier does not set 'BDSINCLUDE'.
         if (!variables.containsKey("BDSINCLUDE")) {
             variables.put("BDSINCLUDE", variables.get("BDS")
@@ -87,6 +254,57 @@ public class BDSUtilities {
         return variables;
     }
 
+    /**
+     * Parses an XML file such as an MSBuild project.  Neither external
+     * entities nor external DTDs are loaded so that a project file cannot
+     * make the node read other files or connect to other hosts.
+     *
+     * @param file XML file
+     * @return parsed document
+     * @throws IOException if an I/O exception or a parse error has occurred
+     */
+    public static Document parseXml(File file) throws IOException {
+        try {
+            return newDocumentBuilderFactory().newDocumentBuilder()
+                    .parse(file);
+        } catch (ParserConfigurationException exception) {
+            throw new IOException(exception);
+        } catch (SAXException exception) {
+            throw new IOException(exception);
+        }
+    }
+
+    private static DocumentBuilderFactory newDocumentBuilderFactory()
+            throws ParserConfigurationException {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        for (String feature : DISABLED_XML_FEATURES) {
+            factory.setFeature(feature, false);
+        }
+        factory.setXIncludeAware(false);
+        factory.setExpandEntityReferences(false);
+        return factory;
+    }
+
+    /**
+     * Returns a callable which reads RAD Studio environment variables from a
+     * batch file on the node where the file is located.  The size and the
+     * last modified time of the batch file are returned together so that a
+     * single call validates cached variables.
+     *
+     * @param length size of the batch file when the cached variables were
+     * read, or <code>-1</code> if none
+     * @param lastModified last modified time of the batch file when the
+     * cached variables were read, or <code>-1</code> if none
+     * @param parse <code>false</code> to return only the size and the last
+     * modified time
+     * @return callable for {@link FilePath#act}
+     */
+    public static FileCallable<BatchVariables> getVariablesReader(
+            long length, long lastModified, boolean parse) {
+        return new VariablesReader(length, lastModified, parse);
+    }
+
     /**
      * Returns an input stream for a file.  For a remote file, a
      * <code>type</code> command will be executed to get the file content.
@@ -101,8 +319,30 @@ public class BDSUtilities {
     public static InputStream getInputStream(AbstractBuild<?, ?> build,
             Launcher launcher, TaskListener listener, FilePath file)
             throws IOException, InterruptedException {
+        return getInputStream(build, launcher, listener, file, null);
+    }
+
+    /**
+     * Returns an input stream for a file with the environment of the build
+     * already resolved.
+     * @param build {@link AbstractBuild} object
+     * @param launcher {@link Launcher} object
+     * @param listener {@link TaskListener} object
+     * @param file {@link FilePath} object for a file
+     * @param environment environment of the build, or <code>null</code> to
+     * get it from the build if necessary
+     * @return input stream from the file
+     * @throws IOException if an I/O error has occurred
+     * @throws InterruptedException if the thread was interrupted
+     */
+    public static InputStream getInputStream(AbstractBuild<?, ?> build,
+            Launcher launcher, TaskListener listener, FilePath file,
+            EnvVars environment)
+            throws IOException, InterruptedException {
         if (file.isRemote()) {
-            EnvVars environment = build.getEnvironment(listener);
+            if (environment == null) {
+                environment = build.getEnvironment(listener);
+            }
 
             String comspec = environment.get("COMSPEC");
             if (comspec == null) {
@@ -129,4 +369,104 @@ public class BDSUtilities {
         }
         return file.read();
     }
+
+    /**
+     * Callable which returns the character encoding of batch files on a
+     * node.
+     */
+    private static final class BatchEncodingGetter
+            implements Callable<String, IOException> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public String call() throws IOException {
+            return getBatchEncoding();
+        }
+    }
+
+    /**
+     * RAD Studio environment variables read from a batch file with the size
+     * and the last modified time of the batch file.
+     */
+    public static final class BatchVariables implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long length;
+        private final long lastModified;
+        private final Map<String, String> variables;
+
+        BatchVariables(long length, long lastModified,
+                Map<String, String> variables) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.variables = variables;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * Returns the variables read from the batch file.
+         *
+         * @return variables, or <code>null</code> if the batch file was not
+         * parsed
+         */
+        public Map<String, String> getVariables() {
+            return variables;
+        }
+    }
+
+    /**
+     * Callable which reads RAD Studio environment variables on a node so that
+     * only the resulting variables are sent back.  The batch file is not
+     * parsed if it is unchanged since the cached variables were read.
+     */
+    private static final class VariablesReader
+            implements FileCallable<BatchVariables> {
+
+        private static final long serialVersionUID = 2L;
+
+        private final long length;
+        private final long lastModified;
+        private final boolean parse;
+
+        VariablesReader(long length, long lastModified, boolean parse) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.parse = parse;
+        }
+
+        /**
+         * Reads RAD Studio environment variables from a batch file.
+         *
+         * @param file batch file
+         * @param channel {@link VirtualChannel} object
+         * @return variables read from the batch file, or <code>null</code>
+         * if the batch file does not exist
+         * @throws IOException if an I/O exception has occurred
+         */
+        @Override
+        public BatchVariables invoke(File file, VirtualChannel channel)
+                throws IOException {
+            if (!file.isFile()) {
+                return null;
+            }
+            long currentLength = file.length();
+            long currentLastModified = file.lastModified();
+            Map<String, String> variables = null;
+            if (parse && (currentLength != length
+                    || currentLastModified != lastModified)) {
+                variables = readVariables(new FileInputStream(file));
+            }
+            return new BatchVariables(currentLength, currentLastModified,
+                    variables);
+        }
+    }
 }
@@ -0,0 +1,154 @@
+/*
+ * BDSVariablesCache
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cache of RAD Studio environment variables read from batch files.
+ * Each entry is keyed by a node name and the path of a batch file on the
+ * node, and it is valid only while the size and the last modified time of
+ * the batch file are unchanged.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class BDSVariablesCache {
+
+    private static final BDSVariablesCache INSTANCE = new BDSVariablesCache();
+
+    private final ConcurrentMap<String, Entry> entries =
+            new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * Returns the shared instance.
+     *
+     * @return shared instance
+     */
+    public static BDSVariablesCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the cache key for a batch file on a node.
+     *
+     * @param nodeName name of the node (empty for the master)
+     * @param path path of the batch file on the node
+     * @return cache key
+     */
+    protected static String getKey(String nodeName, String path) {
+        return nodeName + "\n" + path;
+    }
+
+    /**
+     * Returns the cached variables for a batch file if they are still valid.
+     *
+     * @param nodeName name of the node (empty for the master)
+     * @param path path of the batch file on the node
+     * @param length current size of the batch file
+     * @param lastModified current last modified time of the batch file
+     * @return cached variables, or <code>null</code> if there is no valid
+     * entry
+     */
+    public Map<String, String> get(String nodeName, String path,
+            long length, long lastModified) {
+        String key = getKey(nodeName, path);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.length != length || entry.lastModified != lastModified) {
+            // The batch file has changed since it was read.
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry.variables;
+    }
+
+    /**
+     * Returns the cached entry for a batch file without validating it.
+     *
+     * @param nodeName name of the node (empty for the master)
+     * @param path path of the batch file on the node
+     * @return cached entry, or <code>null</code> if there is none
+     */
+    public Entry getEntry(String nodeName, String path) {
+        return entries.get(getKey(nodeName, path));
+    }
+
+    /**
+     * Puts variables read from a batch file.
+     *
+     * @param nodeName name of the node (empty for the master)
+     * @param path path of the batch file on the node
+     * @param length size of the batch file when read
+     * @param lastModified last modified time of the batch file when read
+     * @param variables variables read from the batch file
+     * @return unmodifiable copy of the variables as cached
+     */
+    public Map<String, String> put(String nodeName, String path,
+            long length, long lastModified, Map<String, String> variables) {
+        Map<String, String> copy = new TreeMap<String, String>(
+                String.CASE_INSENSITIVE_ORDER);
+        copy.putAll(variables);
+        copy = Collections.unmodifiableMap(copy);
+        entries.put(getKey(nodeName, path),
+                new Entry(length, lastModified, copy));
+        return copy;
+    }
+
+    /**
+     * Removes all the entries.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Cache entry.
+     */
+    public static final class Entry {
+
+        private final long length;
+        private final long lastModified;
+        private final Map<String, String> variables;
+
+        Entry(long length, long lastModified, Map<String, String> variables) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.variables = variables;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public Map<String, String> getVariables() {
+            return variables;
+        }
+    }
+}
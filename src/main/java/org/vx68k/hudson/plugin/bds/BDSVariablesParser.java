@@ -0,0 +1,254 @@
+/*
+ * BDSVariablesParser
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Single-pass parser for <code>set</code> commands in the batch file which
+ * initializes a RAD Studio Command Prompt.
+ * Lines are examined in place as they are read and strings are created only
+ * for the variables which are kept.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class BDSVariablesParser {
+
+    private static final int INITIAL_BUFFER_SIZE = 4096;
+
+    private static final char[] SET_COMMAND = {'s', 'e', 't'};
+
+    /**
+     * Prefixes of the variable names to be kept.
+     */
+    private static final char[][] PREFIXES = {
+        "BDS".toCharArray(),
+        "CG_".toCharArray(),
+        "Framework".toCharArray(),
+    };
+
+    private final Map<String, String> variables =
+            new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+
+    private char[] buffer = new char[INITIAL_BUFFER_SIZE];
+    private int size = 0;
+
+    /**
+     * Parses <code>set</code> commands from a reader.
+     *
+     * @param reader reader for a batch file
+     * @return variables set by the batch file whose names start with
+     * <code>BDS</code>, <code>CG_</code> or <code>Framework</code>
+     * @throws IOException if an I/O exception has occurred
+     */
+    public static Map<String, String> parse(Reader reader)
+            throws IOException {
+        BDSVariablesParser parser = new BDSVariablesParser();
+        parser.read(reader);
+        return parser.variables;
+    }
+
+    /**
+     * Reads characters from a reader and scans each line as soon as it is
+     * complete.  The buffer is grown only for a line longer than it.
+     *
+     * @param reader reader
+     * @throws IOException if an I/O exception has occurred
+     */
+    private void read(Reader reader) throws IOException {
+        int n;
+        while ((n = reader.read(buffer, size, buffer.length - size)) >= 0) {
+            size += n;
+            int start = scan(false);
+            // Moves the incomplete line to the start of the buffer.
+            size -= start;
+            System.arraycopy(buffer, start, buffer, 0, size);
+            if (size == buffer.length) {
+                char[] newBuffer = new char[buffer.length * 2];
+                System.arraycopy(buffer, 0, newBuffer, 0, size);
+                buffer = newBuffer;
+            }
+        }
+        scan(true);
+    }
+
+    /**
+     * Scans the buffer line by line.
+     *
+     * @param last <code>true</code> if no more characters follow the buffer
+     * @return start index of the first line not scanned
+     */
+    private int scan(boolean last) {
+        int start = 0;
+        while (start < size) {
+            int end = start;
+            while (end < size && buffer[end] != '\n' && buffer[end] != '\r') {
+                end += 1;
+            }
+            if (end == size && !last) {
+                break;
+            }
+            scanLine(start, end);
+            start = end + 1;
+        }
+        return Math.min(start, size);
+    }
+
+    /**
+     * Scans a line for a <code>set</code> command.
+     *
+     * @param start start index of the line
+     * @param end end index of the line
+     */
+    private void scanLine(int start, int end) {
+        int i = skipSpaces(start, end);
+        if (i < end && buffer[i] == '@') {
+            i += 1;
+        }
+        if (!matchesIgnoreCase(i, end, SET_COMMAND)) {
+            return;
+        }
+        i += SET_COMMAND.length;
+        int keyStart = skipSpaces(i, end);
+        if (keyStart == i) {
+            // Any other commands like 'setlocal'.
+            return;
+        }
+
+        int valueEnd = end;
+        if (keyStart < end && buffer[keyStart] == '"') {
+            // The syntax 'set "name=value"' ignores after the last quote.
+            keyStart += 1;
+            int quote = lastIndexOf('"', keyStart, end);
+            if (quote >= 0) {
+                valueEnd = quote;
+            }
+        }
+        if (!hasPrefix(keyStart, valueEnd)) {
+            return;
+        }
+
+        int equals = indexOf('=', keyStart, valueEnd);
+        if (equals < 0) {
+            return;
+        }
+        String key = new String(buffer, keyStart, equals - keyStart);
+        variables.put(key, expand(equals + 1, valueEnd));
+    }
+
+    /**
+     * Returns a value expanding <code>%name%</code> references to the
+     * variables already kept.  Unknown references are left as they are.
+     *
+     * @param start start index of the value
+     * @param end end index of the value
+     * @return expanded value
+     */
+    private String expand(int start, int end) {
+        int percent = indexOf('%', start, end);
+        if (percent < 0) {
+            return new String(buffer, start, end - start);
+        }
+
+        StringBuilder value = new StringBuilder(end - start);
+        int i = start;
+        while (percent >= 0) {
+            value.append(buffer, i, percent - i);
+            int closing = indexOf('%', percent + 1, end);
+            if (closing < 0) {
+                i = percent;
+                break;
+            }
+            if (closing == percent + 1) {
+                // '%%' stands for a single '%'.
+                value.append('%');
+            } else {
+                String name = new String(buffer, percent + 1,
+                        closing - percent - 1);
+                String replacement = variables.get(name);
+                if (replacement != null) {
+                    value.append(replacement);
+                } else {
+                    value.append(buffer, percent, closing + 1 - percent);
+                }
+            }
+            i = closing + 1;
+            percent = indexOf('%', i, end);
+        }
+        value.append(buffer, i, end - i);
+        return value.toString();
+    }
+
+    private int skipSpaces(int start, int end) {
+        int i = start;
+        while (i < end && Character.isWhitespace(buffer[i])) {
+            i += 1;
+        }
+        return i;
+    }
+
+    private boolean matchesIgnoreCase(int start, int end, char[] word) {
+        if (end - start < word.length) {
+            return false;
+        }
+        for (int i = 0; i != word.length; i += 1) {
+            if (Character.toLowerCase(buffer[start + i]) != word[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean hasPrefix(int start, int end) {
+        for (char[] prefix : PREFIXES) {
+            if (end - start >= prefix.length) {
+                int i = 0;
+                while (i != prefix.length && buffer[start + i] == prefix[i]) {
+                    i += 1;
+                }
+                if (i == prefix.length) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private int indexOf(char c, int start, int end) {
+        for (int i = start; i != end; i += 1) {
+            if (buffer[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int lastIndexOf(char c, int start, int end) {
+        for (int i = end - 1; i >= start; i -= 1) {
+            if (buffer[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * GroupProjectParser
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import hudson.FilePath.FileCallable;
+import hudson.remoting.VirtualChannel;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Parser for RAD Studio project group files (<code>.groupproj</code>).
+ * A project group lists its projects as <code>Projects</code> items whose
+ * <code>Dependencies</code> metadata names the projects to be built before
+ * them, separated by semicolons.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class GroupProjectParser {
+
+    /**
+     * File name extension of project group files.
+     */
+    public static final String GROUP_PROJECT_EXTENSION = ".groupproj";
+
+    private static final String PROJECTS_ELEMENT = "Projects";
+    private static final String DEPENDENCIES_ELEMENT = "Dependencies";
+    private static final String INCLUDE_ATTRIBUTE = "Include";
+
+    /**
+     * Returns <code>true</code> if a file name is that of a project group.
+     *
+     * @param name file name
+     * @return <code>true</code> if the file name ends with
+     * <code>.groupproj</code>
+     */
+    public static boolean isGroupProject(String name) {
+        return name.toLowerCase().endsWith(GROUP_PROJECT_EXTENSION);
+    }
+
+    /**
+     * Returns a callable which parses a project group file on the node where
+     * it is located.
+     *
+     * @return callable for {@link hudson.FilePath#act}
+     */
+    public static FileCallable<LinkedHashMap<String, List<String>>>
+            getReader() {
+        return new Reader();
+    }
+
+    /**
+     * Parses a project group file.
+     *
+     * @param file project group file
+     * @return map from the canonical paths of the projects to those of their
+     * dependencies, in the order of the project group
+     * @throws IOException if an I/O exception or a parse error has occurred
+     */
+    public static LinkedHashMap<String, List<String>> parse(File file)
+            throws IOException {
+        Document document = BDSUtilities.parseXml(file);
+
+        File directory = file.getAbsoluteFile().getParentFile();
+        LinkedHashMap<String, List<String>> projects =
+                new LinkedHashMap<String, List<String>>();
+        NodeList items = document.getElementsByTagName(PROJECTS_ELEMENT);
+        for (int i = 0; i != items.getLength(); i += 1) {
+            Element item = (Element) items.item(i);
+            String include = item.getAttribute(INCLUDE_ATTRIBUTE).trim();
+            if (include.isEmpty()) {
+                continue;
+            }
+
+            List<String> dependencies = new ArrayList<String>();
+            NodeList metadata = item.getElementsByTagName(DEPENDENCIES_ELEMENT);
+            for (int j = 0; j != metadata.getLength(); j += 1) {
+                for (String dependency
+                        : metadata.item(j).getTextContent().split(";")) {
+                    dependency = dependency.trim();
+                    if (!dependency.isEmpty()) {
+                        dependencies.add(resolve(directory, dependency));
+                    }
+                }
+            }
+            projects.put(resolve(directory, include), dependencies);
+        }
+        return projects;
+    }
+
+    private static String resolve(File directory, String path)
+            throws IOException {
+        File file = new File(path);
+        if (!file.isAbsolute()) {
+            file = new File(directory, path);
+        }
+        return file.getCanonicalPath();
+    }
+
+    /**
+     * Callable which parses a project group file on a node.
+     */
+    private static final class Reader
+            implements FileCallable<LinkedHashMap<String, List<String>>> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public LinkedHashMap<String, List<String>> invoke(File file,
+                VirtualChannel channel) throws IOException {
+            return parse(file);
+        }
+    }
+}
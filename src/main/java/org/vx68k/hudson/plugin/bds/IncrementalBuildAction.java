@@ -0,0 +1,101 @@
+/*
+ * IncrementalBuildAction
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import hudson.model.AbstractBuild;
+import hudson.model.Action;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+import org.vx68k.hudson.plugin.bds.resources.Messages;
+
+/**
+ * Build action which counts the projects built and those skipped as their
+ * inputs were unchanged.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+@ExportedBean
+public class IncrementalBuildAction implements Action {
+
+    private int builtCount;
+    private int skippedCount;
+
+    /**
+     * Adds counts of projects to a build.
+     *
+     * @param build build to which the counts are added
+     * @param built number of projects built
+     * @param skipped number of projects skipped
+     */
+    public static void add(AbstractBuild<?, ?> build, int built, int skipped) {
+        IncrementalBuildAction action;
+        synchronized (build) {
+            action = build.getAction(IncrementalBuildAction.class);
+            if (action == null) {
+                action = new IncrementalBuildAction();
+                build.addAction(action);
+            }
+        }
+        synchronized (action) {
+            action.builtCount += built;
+            action.skippedCount += skipped;
+        }
+    }
+
+    /**
+     * Returns the number of projects built.
+     *
+     * @return number of projects built
+     */
+    @Exported
+    public synchronized int getBuiltCount() {
+        return builtCount;
+    }
+
+    /**
+     * Returns the number of projects skipped as unchanged.
+     *
+     * @return number of projects skipped
+     */
+    @Exported
+    public synchronized int getSkippedCount() {
+        return skippedCount;
+    }
+
+    /**
+     * Returns <code>null</code> not to be shown in the side panel.
+     *
+     * @return <code>null</code>
+     */
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return Messages.getIncrementalBuildDisplayName();
+    }
+
+    @Override
+    public String getUrlName() {
+        return null;
+    }
+}
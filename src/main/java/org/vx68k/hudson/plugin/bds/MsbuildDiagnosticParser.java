@@ -0,0 +1,145 @@
+/*
+ * MsbuildDiagnosticParser
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import hudson.console.LineTransformationOutputStream;
+import org.vx68k.hudson.plugin.bds.MsbuildDiagnosticsAction.Diagnostic;
+import org.vx68k.hudson.plugin.bds.MsbuildDiagnosticsAction.Severity;
+
+/**
+ * Output stream which passes the output of MSBuild through line by line and
+ * extracts diagnostics in the canonical MSBuild format, such as
+ * <code>Unit1.pas(12): error E2003: Undeclared identifier: 'X'</code>.
+ * Only the current line is buffered.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class MsbuildDiagnosticParser extends LineTransformationOutputStream {
+
+    /**
+     * Pattern of a diagnostic line with an optional node prefix, an optional
+     * origin and an optional project suffix.
+     */
+    private static final Pattern DIAGNOSTIC_PATTERN = Pattern.compile(
+            "^\\s*(?:\\d+>)?(?:(.*?)(?:\\((\\d+)(?:,[\\d,-]+)?\\))?\\s*:\\s*)?"
+            + "(fatal error|error|hint warning|hint|warning)"
+            + "\\s+([A-Za-z]+\\d+)\\s*:\\s*(.*?)(?:\\s+\\[[^\\]]*\\])?\\s*$");
+
+    private static final Pattern SUMMARY_PATTERN = Pattern.compile(
+            "^\\s*Build (succeeded|FAILED)\\.\\s*$");
+
+    private final OutputStream out;
+    private final Charset charset;
+    private final MsbuildDiagnosticsAction diagnostics;
+
+    private boolean summary = false;
+
+    /**
+     * Constructs this object.
+     *
+     * @param out output stream to which lines are passed
+     * @param charset character set of the output
+     * @param diagnostics action to which diagnostics are added
+     */
+    public MsbuildDiagnosticParser(OutputStream out, Charset charset,
+            MsbuildDiagnosticsAction diagnostics) {
+        this.out = out;
+        this.charset = charset;
+        this.diagnostics = diagnostics;
+    }
+
+    /**
+     * Parses a line of MSBuild output.
+     *
+     * @param line line without the line terminator
+     * @return diagnostic, or <code>null</code> if the line is not one
+     */
+    public static Diagnostic parse(String line) {
+        // Most lines are rejected without matching the pattern.
+        if (line.indexOf(':') < 0 || line.indexOf("error") < 0
+                && line.indexOf("warning") < 0 && line.indexOf("hint") < 0) {
+            return null;
+        }
+        Matcher matcher = DIAGNOSTIC_PATTERN.matcher(line);
+        if (!matcher.matches()) {
+            return null;
+        }
+
+        String category = matcher.group(3);
+        Severity severity = Severity.WARNING;
+        if (category.endsWith("error")) {
+            severity = Severity.ERROR;
+        } else if (category.startsWith("hint")) {
+            severity = Severity.HINT;
+        }
+        String file = matcher.group(1);
+        if (file != null) {
+            file = file.trim();
+            if (file.isEmpty()) {
+                file = null;
+            }
+        }
+        int lineNumber = 0;
+        if (matcher.group(2) != null) {
+            lineNumber = Integer.parseInt(matcher.group(2));
+        }
+        return new Diagnostic(severity, file, lineNumber, matcher.group(4),
+                matcher.group(5));
+    }
+
+    @Override
+    protected void eol(byte[] b, int len) throws IOException {
+        out.write(b, 0, len);
+        if (summary) {
+            return;
+        }
+
+        int end = len;
+        while (end > 0 && (b[end - 1] == '\n' || b[end - 1] == '\r')) {
+            end -= 1;
+        }
+        String line = new String(b, 0, end, charset);
+        if (SUMMARY_PATTERN.matcher(line).matches()) {
+            // MSBuild repeats all the diagnostics after this.
+            summary = true;
+            return;
+        }
+        Diagnostic diagnostic = parse(line);
+        if (diagnostic != null) {
+            diagnostics.add(diagnostic);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        out.flush();
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * MsbuildDiagnosticsAction
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import hudson.model.AbstractBuild;
+import hudson.model.Action;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+import org.vx68k.hudson.plugin.bds.resources.Messages;
+
+/**
+ * Build action which keeps the compiler and MSBuild diagnostics found in the
+ * output of the MSBuild build steps.  The diagnostics are counted by
+ * severity, and at most {@link #MAX_DIAGNOSTICS} of them are kept so that
+ * a huge log does not make a huge build record.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+@ExportedBean
+public class MsbuildDiagnosticsAction implements Action {
+
+    /**
+     * Maximum number of the diagnostics kept in a build.
+     */
+    public static final int MAX_DIAGNOSTICS = 500;
+
+    private final Set<Diagnostic> diagnostics =
+            new LinkedHashSet<Diagnostic>();
+    private int errorCount;
+    private int warningCount;
+    private int hintCount;
+
+    /**
+     * Returns the action of a build creating one if necessary.
+     *
+     * @param build build
+     * @return action of the build
+     */
+    public static MsbuildDiagnosticsAction get(AbstractBuild<?, ?> build) {
+        synchronized (build) {
+            MsbuildDiagnosticsAction action =
+                    build.getAction(MsbuildDiagnosticsAction.class);
+            if (action == null) {
+                action = new MsbuildDiagnosticsAction();
+                build.addAction(action);
+            }
+            return action;
+        }
+    }
+
+    /**
+     * Adds a diagnostic unless the same one has already been added.
+     *
+     * @param diagnostic diagnostic to add
+     */
+    public synchronized void add(Diagnostic diagnostic) {
+        if (diagnostics.contains(diagnostic)) {
+            // MSBuild repeats diagnostics at the end of its output.
+            return;
+        }
+        if (diagnostics.size() < MAX_DIAGNOSTICS) {
+            diagnostics.add(diagnostic);
+        }
+        switch (diagnostic.getSeverity()) {
+        case ERROR:
+            errorCount += 1;
+            break;
+        case WARNING:
+            warningCount += 1;
+            break;
+        default:
+            hintCount += 1;
+            break;
+        }
+    }
+
+    /**
+     * Returns the kept diagnostics in the order of their appearance.
+     *
+     * @return list of the diagnostics
+     */
+    @Exported(inline = true)
+    public synchronized List<Diagnostic> getDiagnostics() {
+        return new ArrayList<Diagnostic>(diagnostics);
+    }
+
+    /**
+     * Returns the kept diagnostics of a severity.
+     *
+     * @param severity name of the severity
+     * @return list of the diagnostics
+     */
+    public synchronized List<Diagnostic> getDiagnostics(String severity) {
+        Severity value = Severity.valueOf(severity);
+        List<Diagnostic> list = new ArrayList<Diagnostic>();
+        for (Diagnostic diagnostic : diagnostics) {
+            if (diagnostic.getSeverity() == value) {
+                list.add(diagnostic);
+            }
+        }
+        return list;
+    }
+
+    @Exported
+    public synchronized int getErrorCount() {
+        return errorCount;
+    }
+
+    @Exported
+    public synchronized int getWarningCount() {
+        return warningCount;
+    }
+
+    @Exported
+    public synchronized int getHintCount() {
+        return hintCount;
+    }
+
+    /**
+     * Returns <code>true</code> if more diagnostics were found than kept.
+     *
+     * @return <code>true</code> if some diagnostics were not kept
+     */
+    public synchronized boolean isTruncated() {
+        return errorCount + warningCount + hintCount > diagnostics.size();
+    }
+
+    /**
+     * Returns <code>null</code> not to be shown in the side panel.
+     *
+     * @return <code>null</code>
+     */
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return Messages.getDiagnosticsDisplayName();
+    }
+
+    @Override
+    public String getUrlName() {
+        return null;
+    }
+
+    /**
+     * Severity of a diagnostic.
+     */
+    public static enum Severity {
+        ERROR, WARNING, HINT
+    }
+
+    /**
+     * Diagnostic reported by a compiler or MSBuild.
+     */
+    @ExportedBean(defaultVisibility = 2)
+    public static final class Diagnostic implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Severity severity;
+        private final String file;
+        private final int line;
+        private final String code;
+        private final String message;
+
+        /**
+         * Constructs this object.
+         *
+         * @param severity severity
+         * @param file file name, or <code>null</code> if unknown
+         * @param line line number, or zero if unknown
+         * @param code diagnostic code such as <code>E2003</code>
+         * @param message message text
+         */
+        public Diagnostic(Severity severity, String file, int line,
+                String code, String message) {
+            this.severity = severity;
+            this.file = file;
+            this.line = line;
+            this.code = code;
+            this.message = message;
+        }
+
+        @Exported
+        public Severity getSeverity() {
+            return severity;
+        }
+
+        @Exported
+        public String getFile() {
+            return file;
+        }
+
+        @Exported
+        public int getLine() {
+            return line;
+        }
+
+        @Exported
+        public String getCode() {
+            return code;
+        }
+
+        @Exported
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof Diagnostic)) {
+                return false;
+            }
+            Diagnostic other = (Diagnostic) object;
+            return severity == other.severity && line == other.line
+                    && equals(file, other.file) && code.equals(other.code)
+                    && message.equals(other.message);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = severity.hashCode();
+            if (file != null) {
+                hash = 31 * hash + file.hashCode();
+            }
+            hash = 31 * hash + line;
+            hash = 31 * hash + code.hashCode();
+            return 31 * hash + message.hashCode();
+        }
+
+        private static boolean equals(String x, String y) {
+            if (x == null) {
+                return y == null;
+            }
+            return x.equals(y);
+        }
+    }
+}
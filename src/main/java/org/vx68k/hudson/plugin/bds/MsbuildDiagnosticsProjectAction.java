@@ -0,0 +1,143 @@
+/*
+ * MsbuildDiagnosticsProjectAction
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import java.util.ArrayList;
+import java.util.List;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.Action;
+import org.vx68k.hudson.plugin.bds.resources.Messages;
+
+/**
+ * Project action which shows the trend of the MSBuild diagnostics over the
+ * recent builds on the project page.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class MsbuildDiagnosticsProjectAction implements Action {
+
+    /**
+     * Maximum number of the builds in the trend.
+     */
+    private static final int TREND_LENGTH = 10;
+
+    private final AbstractProject<?, ?> project;
+
+    /**
+     * Constructs this object.
+     *
+     * @param project project
+     */
+    public MsbuildDiagnosticsProjectAction(AbstractProject<?, ?> project) {
+        this.project = project;
+    }
+
+    /**
+     * Returns the trend of the diagnostics.
+     *
+     * @return list of the entries from the latest build
+     */
+    public List<Entry> getTrend() {
+        List<Entry> trend = new ArrayList<Entry>();
+        AbstractBuild<?, ?> build = project.getLastBuild();
+        while (build != null && trend.size() < TREND_LENGTH) {
+            MsbuildDiagnosticsAction action =
+                    build.getAction(MsbuildDiagnosticsAction.class);
+            if (action != null) {
+                trend.add(new Entry(build.getNumber(), action));
+            }
+            build = build.getPreviousBuild();
+        }
+        return trend;
+    }
+
+    /**
+     * Returns the largest total count in the trend to scale the bars.
+     *
+     * @param trend trend returned by {@link #getTrend}
+     * @return largest total count, which is at least one
+     */
+    public int getMaxCount(List<Entry> trend) {
+        int max = 1;
+        for (Entry entry : trend) {
+            max = Math.max(max, entry.getTotalCount());
+        }
+        return max;
+    }
+
+    /**
+     * Returns <code>null</code> not to be shown in the side panel.
+     *
+     * @return <code>null</code>
+     */
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return Messages.getDiagnosticsDisplayName();
+    }
+
+    @Override
+    public String getUrlName() {
+        return null;
+    }
+
+    /**
+     * Diagnostic counts of a build.
+     */
+    public static final class Entry {
+
+        private final int number;
+        private final int errorCount;
+        private final int warningCount;
+        private final int hintCount;
+
+        Entry(int number, MsbuildDiagnosticsAction action) {
+            this.number = number;
+            this.errorCount = action.getErrorCount();
+            this.warningCount = action.getWarningCount();
+            this.hintCount = action.getHintCount();
+        }
+
+        public int getNumber() {
+            return number;
+        }
+
+        public int getErrorCount() {
+            return errorCount;
+        }
+
+        public int getWarningCount() {
+            return warningCount;
+        }
+
+        public int getHintCount() {
+            return hintCount;
+        }
+
+        public int getTotalCount() {
+            return errorCount + warningCount + hintCount;
+        }
+    }
+}
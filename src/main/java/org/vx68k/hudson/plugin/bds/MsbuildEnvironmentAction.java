@@ -0,0 +1,82 @@
+/*
+ * MsbuildEnvironmentAction
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import java.util.HashMap;
+import java.util.Map;
+import hudson.EnvVars;
+import hudson.model.AbstractBuild;
+import hudson.model.InvisibleAction;
+
+/**
+ * Build action which keeps the environments resolved for the MSBuild build
+ * steps of a build so that later build steps with the same key reuse them.
+ * The environments are kept only in memory and never saved with the build.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class MsbuildEnvironmentAction extends InvisibleAction {
+
+    private transient Map<String, EnvVars> environments;
+
+    /**
+     * Returns the action of a build creating one if necessary.
+     *
+     * @param build build
+     * @return action of the build
+     */
+    public static MsbuildEnvironmentAction get(AbstractBuild<?, ?> build) {
+        synchronized (build) {
+            MsbuildEnvironmentAction action =
+                    build.getAction(MsbuildEnvironmentAction.class);
+            if (action == null) {
+                action = new MsbuildEnvironmentAction();
+                build.addAction(action);
+            }
+            return action;
+        }
+    }
+
+    /**
+     * Returns a copy of the environment resolved for a key.
+     *
+     * @param key key such as the name of an installation
+     * @return copy of the environment, or <code>null</code> if not resolved
+     */
+    public synchronized EnvVars get(String key) {
+        if (environments == null || !environments.containsKey(key)) {
+            return null;
+        }
+        return new EnvVars(environments.get(key));
+    }
+
+    /**
+     * Puts a copy of an environment resolved for a key.
+     *
+     * @param key key such as the name of an installation
+     * @param env environment
+     */
+    public synchronized void put(String key, EnvVars env) {
+        if (environments == null) {
+            environments = new HashMap<String, EnvVars>();
+        }
+        environments.put(key, new EnvVars(env));
+    }
+}
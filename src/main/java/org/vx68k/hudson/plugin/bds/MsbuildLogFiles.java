@@ -0,0 +1,181 @@
+/*
+ * MsbuildLogFiles
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.zip.GZIPOutputStream;
+import hudson.FilePath;
+import hudson.FilePath.FileCallable;
+import hudson.model.AbstractBuild;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import org.vx68k.hudson.plugin.bds.resources.Messages;
+
+/**
+ * Detailed MSBuild log files written on the node and archived compressed as
+ * build artifacts, so that the build log on the controller stays brief.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class MsbuildLogFiles {
+
+    /**
+     * Name of the directory for the log files in a workspace and in the
+     * artifacts.
+     */
+    public static final String LOG_DIRECTORY_NAME = ".msbuild-logs";
+
+    private static final String ARTIFACT_DIRECTORY_NAME = "msbuild-logs";
+
+    private static final String LOG_EXTENSION = ".log";
+
+    private static final String COMPRESSED_EXTENSION = ".gz";
+
+    /**
+     * Returns the MSBuild options to write a detailed log file and to keep
+     * the console output to errors, warnings and summaries.
+     *
+     * @param project name of the project file, or <code>null</code> if not
+     * specified
+     * @return array of the options
+     */
+    public static String[] getOptions(String project) {
+        return new String[] {
+            "/v:minimal",
+            "/clp:Summary;PerformanceSummary",
+            "/fl",
+            "/flp:LogFile=" + LOG_DIRECTORY_NAME + "\\"
+                    + getLogFileName(project)
+                    + ";Verbosity=detailed;Encoding=UTF-8",
+        };
+    }
+
+    /**
+     * Returns the name of the log file for a project.
+     *
+     * @param project name of the project file, or <code>null</code> if not
+     * specified
+     * @return file name
+     */
+    public static String getLogFileName(String project) {
+        if (project == null) {
+            return "msbuild" + LOG_EXTENSION;
+        }
+        StringBuilder name = new StringBuilder(project.length());
+        for (char c : project.toCharArray()) {
+            if (Character.isLetterOrDigit(c) || c == '.' || c == '-') {
+                name.append(c);
+            } else {
+                name.append('_');
+            }
+        }
+        return name.append(LOG_EXTENSION).toString();
+    }
+
+    /**
+     * Prepares the log directory in a workspace.
+     *
+     * @param workspace workspace
+     * @throws IOException if an I/O exception has occurred
+     * @throws InterruptedException if interrupted
+     */
+    public static void prepare(FilePath workspace)
+            throws IOException, InterruptedException {
+        workspace.child(LOG_DIRECTORY_NAME).mkdirs();
+    }
+
+    /**
+     * Compresses the log files of projects on the node and moves them into
+     * the artifacts of a build.  Any failure is reported but does not fail
+     * the build.
+     *
+     * @param build current build
+     * @param listener {@link TaskListener} object
+     * @param projects names of the project files, which may include
+     * <code>null</code>
+     * @throws InterruptedException if interrupted
+     */
+    public static void archive(AbstractBuild<?, ?> build,
+            TaskListener listener, Collection<String> projects)
+            throws InterruptedException {
+        FilePath directory = build.getWorkspace().child(LOG_DIRECTORY_NAME);
+        FilePath artifacts = new FilePath(
+                new File(build.getArtifactsDir(), ARTIFACT_DIRECTORY_NAME));
+        for (String project : projects) {
+            String name = getLogFileName(project);
+            try {
+                FilePath log = directory.child(name);
+                if (!log.exists()) {
+                    continue;
+                }
+                FilePath compressed = directory.child(
+                        name + COMPRESSED_EXTENSION);
+                log.act(new Compressor());
+                artifacts.mkdirs();
+                compressed.copyTo(artifacts.child(
+                        name + COMPRESSED_EXTENSION));
+                compressed.delete();
+            } catch (IOException exception) {
+                listener.error(Messages.getLogArchiveFailedMessage(
+                        name, exception));
+            }
+        }
+    }
+
+    /**
+     * Callable which compresses a file replacing it.
+     */
+    private static final class Compressor implements FileCallable<Void> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Void invoke(File file, VirtualChannel channel)
+                throws IOException {
+            File compressed = new File(file.getPath() + COMPRESSED_EXTENSION);
+            InputStream in = new FileInputStream(file);
+            try {
+                OutputStream out = new GZIPOutputStream(
+                        new FileOutputStream(compressed));
+                try {
+                    byte[] buffer = new byte[8192];
+                    int n;
+                    while ((n = in.read(buffer)) >= 0) {
+                        out.write(buffer, 0, n);
+                    }
+                } finally {
+                    out.close();
+                }
+            } finally {
+                in.close();
+            }
+            if (!file.delete()) {
+                throw new IOException("Failed to delete " + file);
+            }
+            return null;
+        }
+    }
+}
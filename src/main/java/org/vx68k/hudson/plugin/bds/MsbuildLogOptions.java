@@ -0,0 +1,91 @@
+/*
+ * MsbuildLogOptions
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import hudson.Extension;
+import hudson.model.AbstractDescribableImpl;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.vx68k.hudson.plugin.bds.resources.Messages;
+
+/**
+ * Options for the output of MSBuild.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class MsbuildLogOptions
+        extends AbstractDescribableImpl<MsbuildLogOptions> {
+
+    private final boolean detailedLog;
+    private final boolean performanceSummary;
+
+    /**
+     * Constructs this object with the default values.
+     */
+    public MsbuildLogOptions() {
+        this(false, false);
+    }
+
+    /**
+     * Constructs this object.
+     *
+     * @param detailedLog <code>true</code> to write detailed log files on
+     * the node and to keep the console output brief
+     * @param performanceSummary <code>true</code> to have MSBuild print the
+     * performance summary and to record it
+     */
+    @DataBoundConstructor
+    public MsbuildLogOptions(boolean detailedLog, boolean performanceSummary) {
+        this.detailedLog = detailedLog;
+        this.performanceSummary = performanceSummary;
+    }
+
+    /**
+     * Returns <code>true</code> if detailed log files shall be written on
+     * the node instead of the console.
+     *
+     * @return <code>true</code> to write detailed log files
+     */
+    public boolean isDetailedLog() {
+        return detailedLog;
+    }
+
+    /**
+     * Returns <code>true</code> if the MSBuild performance summary shall be
+     * recorded.
+     *
+     * @return <code>true</code> to record the performance summary
+     */
+    public boolean isPerformanceSummary() {
+        return performanceSummary;
+    }
+
+    /**
+     * Describes {@link MsbuildLogOptions}.
+     */
+    @Extension
+    public static final class Descriptor
+            extends hudson.model.Descriptor<MsbuildLogOptions> {
+
+        @Override
+        public String getDisplayName() {
+            return Messages.getLogOptionsDisplayName();
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * MsbuildMatrixCell
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Cell of a matrix of platforms and configurations to build projects for.
+ * Each cell has its own directories for the units and the packages so that
+ * the cells of a project can be built at the same time.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class MsbuildMatrixCell {
+
+    /**
+     * Separator between the project file and the cell in a label.
+     */
+    public static final char LABEL_SEPARATOR = '|';
+
+    private final String platform;
+    private final String configuration;
+
+    /**
+     * Constructs this object.
+     *
+     * @param platform name of the platform, or <code>null</code> for the
+     * default of each project
+     * @param configuration name of the configuration, or <code>null</code>
+     * for the default of each project
+     */
+    public MsbuildMatrixCell(String platform, String configuration) {
+        this.platform = platform;
+        this.configuration = configuration;
+    }
+
+    /**
+     * Returns the name of the platform.
+     *
+     * @return name of the platform, or <code>null</code> for the default
+     */
+    public String getPlatform() {
+        return platform;
+    }
+
+    /**
+     * Returns the name of the configuration.
+     *
+     * @return name of the configuration, or <code>null</code> for the
+     * default
+     */
+    public String getConfiguration() {
+        return configuration;
+    }
+
+    /**
+     * Returns the cells for all the combinations of platforms and
+     * configurations.
+     *
+     * @param platforms names of the platforms separated by white spaces or
+     * commas, or <code>null</code>
+     * @param configurations names of the configurations separated by white
+     * spaces or commas, or <code>null</code>
+     * @return list of the cells, which is empty if neither platforms nor
+     * configurations are given
+     */
+    public static List<MsbuildMatrixCell> expand(String platforms,
+            String configurations) {
+        List<String> platformNames = split(platforms);
+        List<String> configurationNames = split(configurations);
+        if (platformNames.isEmpty() && configurationNames.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (platformNames.isEmpty()) {
+            platformNames.add(null);
+        }
+        if (configurationNames.isEmpty()) {
+            configurationNames.add(null);
+        }
+
+        List<MsbuildMatrixCell> cells = new ArrayList<MsbuildMatrixCell>();
+        for (String platform : platformNames) {
+            for (String configuration : configurationNames) {
+                cells.add(new MsbuildMatrixCell(platform, configuration));
+            }
+        }
+        return cells;
+    }
+
+    private static List<String> split(String names) {
+        List<String> list = new ArrayList<String>();
+        if (names != null) {
+            for (String name : names.split("[\\s,]+")) {
+                if (!name.isEmpty() && !list.contains(name)) {
+                    list.add(name);
+                }
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Returns the project file in a label.
+     *
+     * @param label label returned by {@link #getLabel}, or a project file
+     * @return project file
+     */
+    public static String getProjectFile(String label) {
+        int separator = label.indexOf(LABEL_SEPARATOR);
+        if (separator < 0) {
+            return label;
+        }
+        return label.substring(0, separator);
+    }
+
+    /**
+     * Returns the name of this cell such as <code>Win32 Debug</code>.
+     *
+     * @return name of this cell
+     */
+    public String getName() {
+        StringBuilder name = new StringBuilder();
+        if (platform != null) {
+            name.append(platform);
+        }
+        if (configuration != null) {
+            if (name.length() != 0) {
+                name.append(' ');
+            }
+            name.append(configuration);
+        }
+        return name.toString();
+    }
+
+    /**
+     * Returns the label of a project in this cell such as
+     * <code>Project1.dproj|Win32|Debug</code>.
+     *
+     * @param project project file
+     * @return label of the project in this cell
+     */
+    public String getLabel(String project) {
+        StringBuilder label = new StringBuilder(project);
+        if (platform != null) {
+            label.append(LABEL_SEPARATOR).append(platform);
+        }
+        if (configuration != null) {
+            label.append(LABEL_SEPARATOR).append(configuration);
+        }
+        return label.toString();
+    }
+
+    /**
+     * Returns the MSBuild options to build a project in this cell.  They
+     * shall be given after the other options to override them.  Units are
+     * written to a subdirectory of the project directory, and packages to
+     * a subdirectory of the package directory, for this cell so that the
+     * cells built at the same time do not overwrite each other's outputs.
+     * The projects of a cell share its package directories so that they
+     * find the packages on which they depend.
+     *
+     * @param packageDirectory directory under which the packages of the
+     * cells are written, or <code>null</code> to write them under the
+     * project directory
+     * @return list of the options
+     */
+    public List<String> getOptions(String packageDirectory) {
+        return getOptions(packageDirectory, Collections.<String>emptySet());
+    }
+
+    /**
+     * Returns the MSBuild options to build a project in this cell except
+     * for the output directories given by the user.  A user-given output
+     * directory shall contain <code>$(Platform)</code> and
+     * <code>$(Config)</code> for the cells not to overwrite each other's
+     * outputs.
+     *
+     * @param packageDirectory directory under which the packages of the
+     * cells are written, or <code>null</code> to write them under the
+     * project directory
+     * @param properties names of the properties given by the user in
+     * upper case
+     * @return list of the options
+     * @see #getOptions(String)
+     */
+    public List<String> getOptions(String packageDirectory,
+            Set<String> properties) {
+        List<String> options = new ArrayList<String>();
+        StringBuilder path = new StringBuilder();
+        if (platform != null) {
+            options.add("/p:Platform=" + platform);
+            path.append('\\').append(platform);
+        }
+        if (configuration != null) {
+            options.add("/p:Config=" + configuration);
+            path.append('\\').append(configuration);
+        }
+        String base = ".";
+        if (packageDirectory != null) {
+            base = packageDirectory;
+        }
+        if (!properties.contains("DCC_DCUOUTPUT")) {
+            options.add("/p:DCC_DcuOutput=." + path);
+        }
+        if (!properties.contains("DCC_BPLOUTPUT")) {
+            options.add("/p:DCC_BplOutput=" + base + "\\Bpl" + path);
+        }
+        if (!properties.contains("DCC_DCPOUTPUT")) {
+            options.add("/p:DCC_DcpOutput=" + base + "\\Dcp" + path);
+        }
+        return options;
+    }
+}
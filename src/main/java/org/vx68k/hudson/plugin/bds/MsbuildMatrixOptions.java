@@ -0,0 +1,92 @@
+/*
+ * MsbuildMatrixOptions
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import hudson.Extension;
+import hudson.model.AbstractDescribableImpl;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.vx68k.hudson.plugin.bds.resources.Messages;
+
+/**
+ * Options to build projects in a matrix of platforms and configurations.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class MsbuildMatrixOptions
+        extends AbstractDescribableImpl<MsbuildMatrixOptions> {
+
+    private final String platforms;
+    private final String configurations;
+
+    /**
+     * Constructs this object with the default values.
+     */
+    public MsbuildMatrixOptions() {
+        this(null, null);
+    }
+
+    /**
+     * Constructs this object.
+     *
+     * @param platforms platforms to build the projects for separated by
+     * white spaces or commas, or <code>null</code> for the defaults
+     * @param configurations configurations to build the projects in
+     * separated by white spaces or commas, or <code>null</code> for the
+     * defaults
+     */
+    @DataBoundConstructor
+    public MsbuildMatrixOptions(String platforms, String configurations) {
+        this.platforms = platforms;
+        this.configurations = configurations;
+    }
+
+    /**
+     * Returns the platforms to build the projects for.
+     *
+     * @return platforms separated by white spaces or commas, which may
+     * contain variables, or <code>null</code> for the defaults
+     */
+    public String getPlatforms() {
+        return platforms;
+    }
+
+    /**
+     * Returns the configurations to build the projects in.
+     *
+     * @return configurations separated by white spaces or commas, which may
+     * contain variables, or <code>null</code> for the defaults
+     */
+    public String getConfigurations() {
+        return configurations;
+    }
+
+    /**
+     * Describes {@link MsbuildMatrixOptions}.
+     */
+    @Extension
+    public static final class Descriptor
+            extends hudson.model.Descriptor<MsbuildMatrixOptions> {
+
+        @Override
+        public String getDisplayName() {
+            return Messages.getMatrixOptionsDisplayName();
+        }
+    }
+}
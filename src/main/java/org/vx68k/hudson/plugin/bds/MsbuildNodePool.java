@@ -0,0 +1,288 @@
+/*
+ * MsbuildNodePool
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.Launcher;
+import hudson.model.Computer;
+import hudson.model.Hudson;
+import hudson.model.Node;
+import hudson.model.PeriodicWork;
+import hudson.model.TaskListener;
+
+/**
+ * Tracker of reusable MSBuild worker nodes kept alive on Hudson nodes.
+ * Worker nodes are marked with an environment variable which identifies
+ * their pool, and those of a pool which has been idle for its timeout are
+ * killed by {@link Reaper}.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class MsbuildNodePool {
+
+    /**
+     * Name of the environment variable which marks MSBuild worker nodes.
+     */
+    public static final String POOL_VARIABLE = "HUDSON_MSBUILD_NODE_POOL";
+
+    /**
+     * Value of <code>BUILD_ID</code> for reusable MSBuild processes so that
+     * they are not killed when a build finishes.  This is the value
+     * documented for the process tree killer of Hudson.
+     */
+    public static final String REUSED_BUILD_ID = "dontKillMe";
+
+    /**
+     * Name of the environment variable which keeps the original value of
+     * <code>BUILD_ID</code>.
+     */
+    public static final String BUILD_ID_VARIABLE = "HUDSON_MSBUILD_BUILD_ID";
+
+    /**
+     * Prefix of the MSBuild option which restores the original value of
+     * <code>BUILD_ID</code> for the evaluation of projects.
+     */
+    public static final String BUILD_ID_OPTION = "/p:BUILD_ID=";
+
+    /**
+     * Default idle timeout in minutes.
+     */
+    public static final int DEFAULT_IDLE_TIMEOUT = 15;
+
+    private static final Logger LOGGER =
+            Logger.getLogger(MsbuildNodePool.class.getName());
+
+    private static final MsbuildNodePool INSTANCE = new MsbuildNodePool();
+
+    private final ConcurrentMap<String, Entry> entries =
+            new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * Returns the shared instance.
+     *
+     * @return shared instance
+     */
+    public static MsbuildNodePool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Prepares environment variables for MSBuild processes whose worker
+     * nodes are to be reused and marks the pool as in use.  This method and
+     * {@link #reap} exclude each other so that a pool is never acquired
+     * while its worker nodes are being killed.  The original value of
+     * <code>BUILD_ID</code> is kept in {@link #BUILD_ID_VARIABLE}.
+     *
+     * @param nodeName name of the Hudson node
+     * @param poolName name of the pool on the node
+     * @param idleTimeout idle timeout in minutes, or zero for the default
+     * @param env environment variables to be modified
+     * @return key to be passed to {@link #release}
+     */
+    public synchronized String acquire(String nodeName, String poolName, int idleTimeout,
+            EnvVars env) {
+        if (idleTimeout <= 0) {
+            idleTimeout = DEFAULT_IDLE_TIMEOUT;
+        }
+        env.put(POOL_VARIABLE, poolName);
+        String buildId = env.get("BUILD_ID");
+        if (buildId != null && !buildId.equals(REUSED_BUILD_ID)) {
+            env.put(BUILD_ID_VARIABLE, buildId);
+        }
+        env.put("BUILD_ID", REUSED_BUILD_ID);
+
+        String key = nodeName + "\n" + poolName;
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entries.putIfAbsent(key, new Entry(nodeName, poolName));
+            entry = entries.get(key);
+        }
+        entry.acquire(TimeUnit.MINUTES.toMillis(idleTimeout));
+        return key;
+    }
+
+    /**
+     * Marks a pool as no longer in use by a build step.  The worker nodes
+     * of a discarded pool are killed when the last build step releases it.
+     *
+     * @param key key returned by {@link #acquire}
+     */
+    public synchronized void release(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return;
+        }
+        entry.release();
+        if (entry.isDiscarded()
+                && entry.isExpired(System.currentTimeMillis())) {
+            entries.remove(key, entry);
+            kill(entry);
+        }
+    }
+
+    /**
+     * Marks a pool as no longer in use by an aborted build step and
+     * discards it.  The worker nodes of the pool may still be running the
+     * work of the build step, and they do not carry its process cookie.
+     * They are killed at once if no other build step uses the pool, or as
+     * soon as the last one releases it otherwise.
+     *
+     * @param key key returned by {@link #acquire}
+     * @param launcher {@link Launcher} object for the node
+     * @throws IOException if an I/O exception has occurred
+     * @throws InterruptedException if interrupted
+     */
+    public synchronized void discard(String key, Launcher launcher)
+            throws IOException, InterruptedException {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return;
+        }
+        entry.release();
+        entry.discard();
+        if (entry.isExpired(System.currentTimeMillis())) {
+            entries.remove(key, entry);
+            launcher.kill(Collections.singletonMap(POOL_VARIABLE,
+                    entry.poolName));
+        }
+    }
+
+    /**
+     * Kills the worker nodes of the pools which have been idle for their
+     * timeouts.
+     *
+     * @param now current time in milliseconds
+     */
+    protected synchronized void reap(long now) {
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            Entry entry = e.getValue();
+            if (!entry.isExpired(now)) {
+                continue;
+            }
+            entries.remove(e.getKey(), entry);
+            if (!kill(entry)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Kills the worker nodes of a pool on its node if the node is online.
+     *
+     * @param entry usage of the pool
+     * @return <code>false</code> if this thread has been interrupted
+     */
+    private static boolean kill(Entry entry) {
+        Computer computer = Hudson.getInstance().getComputer(entry.nodeName);
+        Node node = null;
+        if (computer != null && computer.isOnline()) {
+            node = computer.getNode();
+        }
+        if (node == null) {
+            // The worker nodes must have gone with the connection.
+            return true;
+        }
+        try {
+            LOGGER.log(Level.FINE, "Killing MSBuild nodes of {0} on {1}",
+                    new Object[] {entry.poolName, entry.nodeName});
+            node.createLauncher(TaskListener.NULL).kill(
+                    Collections.singletonMap(POOL_VARIABLE, entry.poolName));
+        } catch (IOException exception) {
+            LOGGER.log(Level.WARNING, "Failed to kill MSBuild nodes",
+                    exception);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Usage of a pool on a node.
+     */
+    private static final class Entry {
+
+        private final String nodeName;
+        private final String poolName;
+        private int users = 0;
+        private long lastUsed = 0;
+        private long idleTimeout = 0;
+        private boolean discarded = false;
+
+        Entry(String nodeName, String poolName) {
+            this.nodeName = nodeName;
+            this.poolName = poolName;
+        }
+
+        synchronized void acquire(long timeout) {
+            users += 1;
+            idleTimeout = Math.max(idleTimeout, timeout);
+        }
+
+        synchronized void release() {
+            users -= 1;
+            lastUsed = System.currentTimeMillis();
+        }
+
+        synchronized void discard() {
+            discarded = true;
+        }
+
+        synchronized boolean isDiscarded() {
+            return discarded;
+        }
+
+        synchronized boolean isExpired(long now) {
+            return users == 0
+                    && (discarded || now - lastUsed >= idleTimeout);
+        }
+    }
+
+    /**
+     * Periodic work which kills idle MSBuild worker nodes.
+     */
+    @Extension
+    public static final class Reaper extends PeriodicWork {
+
+        /**
+         * Returns one minute.
+         *
+         * @return recurrence period in milliseconds
+         */
+        @Override
+        public long getRecurrencePeriod() {
+            return MIN;
+        }
+
+        @Override
+        protected void doRun() {
+            getInstance().reap(System.currentTimeMillis());
+        }
+    }
+}
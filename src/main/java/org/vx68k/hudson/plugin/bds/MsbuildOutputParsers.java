@@ -0,0 +1,106 @@
+/*
+ * MsbuildOutputParsers
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Set of the parsers through which the output of each MSBuild process is
+ * passed.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class MsbuildOutputParsers {
+
+    private final Charset charset;
+    private final MsbuildDiagnosticsAction diagnostics;
+    private final MsbuildPerformanceAction performance;
+
+    /**
+     * Constructs this object.
+     *
+     * @param charset character set of the output
+     * @param diagnostics action to which diagnostics are added, or
+     * <code>null</code> not to parse them
+     * @param performance action to which performance summaries are added, or
+     * <code>null</code> not to parse them
+     */
+    public MsbuildOutputParsers(Charset charset,
+            MsbuildDiagnosticsAction diagnostics,
+            MsbuildPerformanceAction performance) {
+        this.charset = charset;
+        this.diagnostics = diagnostics;
+        this.performance = performance;
+    }
+
+    /**
+     * Opens a stream which passes the output of a MSBuild process through
+     * the parsers.  Closing it flushes the parsers but does not close the
+     * given stream.
+     *
+     * @param out output stream to which the output is passed
+     * @return output stream for the MSBuild process
+     */
+    public OutputStream open(OutputStream out) {
+        final List<OutputStream> layers = new ArrayList<OutputStream>();
+        OutputStream stream = out;
+        if (performance != null) {
+            stream = new MsbuildPerformanceParser(stream, charset,
+                    performance);
+            layers.add(0, stream);
+        }
+        if (diagnostics != null) {
+            stream = new MsbuildDiagnosticParser(stream, charset,
+                    diagnostics);
+            layers.add(0, stream);
+        }
+
+        final OutputStream top = stream;
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                top.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len)
+                    throws IOException {
+                top.write(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                top.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                // From the outermost so that partial lines are passed down.
+                for (OutputStream layer : layers) {
+                    layer.close();
+                }
+            }
+        };
+    }
+}
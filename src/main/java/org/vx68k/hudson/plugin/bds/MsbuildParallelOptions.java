@@ -0,0 +1,120 @@
+/*
+ * MsbuildParallelOptions
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import hudson.Extension;
+import hudson.model.AbstractDescribableImpl;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.vx68k.hudson.plugin.bds.resources.Messages;
+
+/**
+ * Options to run MSBuild processes in parallel for multiple project files.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class MsbuildParallelOptions
+        extends AbstractDescribableImpl<MsbuildParallelOptions> {
+
+    private final int parallelism;
+    private final boolean failFast;
+    private final boolean parallelGroups;
+    private final String partition;
+
+    /**
+     * Constructs this object with the default values.
+     */
+    public MsbuildParallelOptions() {
+        this(0, false, false, null);
+    }
+
+    /**
+     * Constructs this object.
+     *
+     * @param parallelism maximum number of concurrent MSBuild processes, or
+     * zero for the number of processors of the node
+     * @param failFast <code>true</code> to stop the other MSBuild processes
+     * as soon as any of them fails
+     * @param parallelGroups <code>true</code> to build the projects in
+     * project groups in parallel as their dependencies allow
+     * @param partition partition of the projects to build such as
+     * <code>2/4</code>, or <code>null</code> to build all of them
+     */
+    @DataBoundConstructor
+    public MsbuildParallelOptions(int parallelism, boolean failFast,
+            boolean parallelGroups, String partition) {
+        this.parallelism = parallelism;
+        this.failFast = failFast;
+        this.parallelGroups = parallelGroups;
+        this.partition = partition;
+    }
+
+    /**
+     * Returns the maximum number of concurrent MSBuild processes.
+     *
+     * @return maximum number of concurrent MSBuild processes, or zero for the
+     * number of processors of the node
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Returns <code>true</code> if the other MSBuild processes shall be
+     * stopped as soon as any of them fails.
+     *
+     * @return <code>true</code> to fail fast
+     */
+    public boolean isFailFast() {
+        return failFast;
+    }
+
+    /**
+     * Returns <code>true</code> if the projects in project groups shall be
+     * built in parallel as their dependencies allow.
+     *
+     * @return <code>true</code> to build project groups in parallel
+     */
+    public boolean isParallelGroups() {
+        return parallelGroups;
+    }
+
+    /**
+     * Returns the partition of the projects to build.
+     *
+     * @return partition such as <code>2/4</code>, which may contain
+     * variables, or <code>null</code> to build all the projects
+     */
+    public String getPartition() {
+        return partition;
+    }
+
+    /**
+     * Describes {@link MsbuildParallelOptions}.
+     */
+    @Extension
+    public static final class Descriptor
+            extends hudson.model.Descriptor<MsbuildParallelOptions> {
+
+        @Override
+        public String getDisplayName() {
+            return Messages.getParallelOptionsDisplayName();
+        }
+    }
+}
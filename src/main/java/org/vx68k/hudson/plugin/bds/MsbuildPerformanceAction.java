@@ -0,0 +1,236 @@
+/*
+ * MsbuildPerformanceAction
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import hudson.model.AbstractBuild;
+import hudson.model.Action;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+import org.vx68k.hudson.plugin.bds.resources.Messages;
+
+/**
+ * Build action which keeps the durations of the projects, targets and tasks
+ * reported in the MSBuild performance summaries.  The durations of the same
+ * item in multiple MSBuild processes are added together.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+@ExportedBean
+public class MsbuildPerformanceAction implements Action {
+
+    /**
+     * Number of the items shown in the summary of each kind.
+     */
+    private static final int SUMMARY_LENGTH = 10;
+
+    private static final Comparator<Item> BY_DURATION =
+            new Comparator<Item>() {
+        @Override
+        public int compare(Item x, Item y) {
+            if (x.duration != y.duration) {
+                return x.duration > y.duration ? -1 : 1;
+            }
+            return x.name.compareTo(y.name);
+        }
+    };
+
+    private final Map<Kind, Map<String, Item>> items =
+            new HashMap<Kind, Map<String, Item>>();
+
+    /**
+     * Returns the action of a build creating one if necessary.
+     *
+     * @param build build
+     * @return action of the build
+     */
+    public static MsbuildPerformanceAction get(AbstractBuild<?, ?> build) {
+        synchronized (build) {
+            MsbuildPerformanceAction action =
+                    build.getAction(MsbuildPerformanceAction.class);
+            if (action == null) {
+                action = new MsbuildPerformanceAction();
+                build.addAction(action);
+            }
+            return action;
+        }
+    }
+
+    /**
+     * Adds the duration of an item.
+     *
+     * @param kind kind of the item
+     * @param name name of the item
+     * @param duration duration in milliseconds
+     * @param calls number of calls
+     */
+    public synchronized void add(Kind kind, String name, long duration,
+            int calls) {
+        Map<String, Item> map = items.get(kind);
+        if (map == null) {
+            map = new HashMap<String, Item>();
+            items.put(kind, map);
+        }
+        Item item = map.get(name);
+        if (item == null) {
+            item = new Item(name);
+            map.put(name, item);
+        }
+        item.duration += duration;
+        item.calls += calls;
+    }
+
+    /**
+     * Returns the items of a kind from the slowest.
+     *
+     * @param kind name of the kind
+     * @return list of the items
+     */
+    public synchronized List<Item> getItems(String kind) {
+        Map<String, Item> map = items.get(Kind.valueOf(kind));
+        if (map == null) {
+            return Collections.emptyList();
+        }
+        List<Item> list = new ArrayList<Item>();
+        for (Item item : map.values()) {
+            list.add(item.copy());
+        }
+        Collections.sort(list, BY_DURATION);
+        return list;
+    }
+
+    /**
+     * Returns the slowest items of a kind to be shown in the summary.
+     *
+     * @param kind name of the kind
+     * @return list of the items
+     */
+    public List<Item> getSlowestItems(String kind) {
+        List<Item> list = getItems(kind);
+        return list.subList(0, Math.min(list.size(), SUMMARY_LENGTH));
+    }
+
+    /**
+     * Returns the total duration of an item.
+     *
+     * @param kind kind of the item
+     * @param name name of the item
+     * @return duration in milliseconds, or zero if not found
+     */
+    public synchronized long getDuration(Kind kind, String name) {
+        Map<String, Item> map = items.get(kind);
+        if (map == null || !map.containsKey(name)) {
+            return 0;
+        }
+        return map.get(name).duration;
+    }
+
+    @Exported(inline = true)
+    public List<Item> getProjects() {
+        return getItems(Kind.PROJECT.name());
+    }
+
+    @Exported(inline = true)
+    public List<Item> getTargets() {
+        return getItems(Kind.TARGET.name());
+    }
+
+    @Exported(inline = true)
+    public List<Item> getTasks() {
+        return getItems(Kind.TASK.name());
+    }
+
+    /**
+     * Returns <code>null</code> not to be shown in the side panel.
+     *
+     * @return <code>null</code>
+     */
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return Messages.getPerformanceDisplayName();
+    }
+
+    @Override
+    public String getUrlName() {
+        return null;
+    }
+
+    /**
+     * Kind of an item in a performance summary.
+     */
+    public static enum Kind {
+        PROJECT, TARGET, TASK
+    }
+
+    /**
+     * Duration of a project, a target or a task.
+     */
+    @ExportedBean(defaultVisibility = 2)
+    public static final class Item implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String name;
+        private long duration;
+        private int calls;
+
+        Item(String name) {
+            this.name = name;
+        }
+
+        Item copy() {
+            Item item = new Item(name);
+            item.duration = duration;
+            item.calls = calls;
+            return item;
+        }
+
+        @Exported
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the total duration of this item.
+         *
+         * @return duration in milliseconds
+         */
+        @Exported
+        public long getDuration() {
+            return duration;
+        }
+
+        @Exported
+        public int getCalls() {
+            return calls;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * MsbuildPerformanceParser
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import hudson.console.LineTransformationOutputStream;
+import org.vx68k.hudson.plugin.bds.MsbuildPerformanceAction.Kind;
+
+/**
+ * Output stream which passes the output of MSBuild through line by line and
+ * extracts the performance summary printed with
+ * <code>/clp:PerformanceSummary</code>.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class MsbuildPerformanceParser extends LineTransformationOutputStream {
+
+    /**
+     * MSBuild option to print the performance summary.
+     */
+    public static final String PERFORMANCE_SUMMARY_OPTION =
+            "/clp:PerformanceSummary";
+
+    private static final Pattern HEADER_PATTERN = Pattern.compile(
+            "^\\s*(Project|Target|Task) Performance Summary:\\s*$");
+
+    private static final Pattern ITEM_PATTERN = Pattern.compile(
+            "^\\s*(?:\\d+>)?\\s*(\\d+) ms\\s+(.+?)\\s+(\\d+) calls\\s*$");
+
+    private final OutputStream out;
+    private final Charset charset;
+    private final MsbuildPerformanceAction performance;
+
+    private Kind section = null;
+
+    /**
+     * Constructs this object.
+     *
+     * @param out output stream to which lines are passed
+     * @param charset character set of the output
+     * @param performance action to which durations are added
+     */
+    public MsbuildPerformanceParser(OutputStream out, Charset charset,
+            MsbuildPerformanceAction performance) {
+        this.out = out;
+        this.charset = charset;
+        this.performance = performance;
+    }
+
+    /**
+     * Parses a line of MSBuild output.
+     *
+     * @param line line without the line terminator
+     */
+    public void parse(String line) {
+        Matcher header = HEADER_PATTERN.matcher(line);
+        if (header.matches()) {
+            section = Kind.valueOf(header.group(1).toUpperCase());
+            return;
+        }
+        if (section == null) {
+            return;
+        }
+        Matcher item = ITEM_PATTERN.matcher(line);
+        if (item.matches()) {
+            performance.add(section, item.group(2),
+                    Long.parseLong(item.group(1)),
+                    Integer.parseInt(item.group(3)));
+        } else if (!line.trim().isEmpty()) {
+            section = null;
+        }
+    }
+
+    @Override
+    protected void eol(byte[] b, int len) throws IOException {
+        out.write(b, 0, len);
+
+        int end = len;
+        while (end > 0 && (b[end - 1] == '\n' || b[end - 1] == '\r')) {
+            end -= 1;
+        }
+        parse(new String(b, 0, end, charset));
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        out.flush();
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * MsbuildPerformanceProjectAction
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.Action;
+import org.vx68k.hudson.plugin.bds.MsbuildPerformanceAction.Item;
+import org.vx68k.hudson.plugin.bds.MsbuildPerformanceAction.Kind;
+import org.vx68k.hudson.plugin.bds.resources.Messages;
+
+/**
+ * Project action which shows the trend of the durations of the slowest
+ * MSBuild targets over the recent builds on the project page.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class MsbuildPerformanceProjectAction implements Action {
+
+    /**
+     * Maximum number of the builds in the trend.
+     */
+    private static final int TREND_LENGTH = 10;
+
+    /**
+     * Number of the slowest targets in the trend.
+     */
+    private static final int TARGET_COUNT = 5;
+
+    private final AbstractProject<?, ?> project;
+
+    /**
+     * Constructs this object.
+     *
+     * @param project project
+     */
+    public MsbuildPerformanceProjectAction(AbstractProject<?, ?> project) {
+        this.project = project;
+    }
+
+    /**
+     * Returns the names of the slowest targets in the latest build which has
+     * a performance summary.
+     *
+     * @return list of the target names
+     */
+    public List<String> getTargets() {
+        AbstractBuild<?, ?> build = project.getLastBuild();
+        while (build != null
+                && build.getAction(MsbuildPerformanceAction.class) == null) {
+            build = build.getPreviousBuild();
+        }
+        if (build == null) {
+            return Collections.emptyList();
+        }
+        MsbuildPerformanceAction action =
+                build.getAction(MsbuildPerformanceAction.class);
+        List<String> targets = new ArrayList<String>();
+        for (Item item : action.getItems(Kind.TARGET.name())) {
+            if (targets.size() == TARGET_COUNT) {
+                break;
+            }
+            targets.add(item.getName());
+        }
+        return targets;
+    }
+
+    /**
+     * Returns the trend of the durations of targets.
+     *
+     * @param targets names of the targets
+     * @return list of the entries from the latest build
+     */
+    public List<Entry> getTrend(List<String> targets) {
+        List<Entry> trend = new ArrayList<Entry>();
+        AbstractBuild<?, ?> build = project.getLastBuild();
+        while (build != null && trend.size() < TREND_LENGTH) {
+            MsbuildPerformanceAction action =
+                    build.getAction(MsbuildPerformanceAction.class);
+            if (action != null) {
+                long[] durations = new long[targets.size()];
+                for (int i = 0; i != durations.length; i += 1) {
+                    durations[i] = action.getDuration(Kind.TARGET,
+                            targets.get(i));
+                }
+                trend.add(new Entry(build.getNumber(), durations));
+            }
+            build = build.getPreviousBuild();
+        }
+        return trend;
+    }
+
+    /**
+     * Returns <code>null</code> not to be shown in the side panel.
+     *
+     * @return <code>null</code>
+     */
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return Messages.getPerformanceDisplayName();
+    }
+
+    @Override
+    public String getUrlName() {
+        return null;
+    }
+
+    /**
+     * Durations of targets in a build.
+     */
+    public static final class Entry {
+
+        private final int number;
+        private final long[] durations;
+
+        Entry(int number, long[] durations) {
+            this.number = number;
+            this.durations = durations;
+        }
+
+        public int getNumber() {
+            return number;
+        }
+
+        /**
+         * Returns the durations of the targets.
+         *
+         * @return list of the durations in milliseconds
+         */
+        public List<Long> getDurations() {
+            List<Long> list = new ArrayList<Long>(durations.length);
+            for (long duration : durations) {
+                list.add(duration);
+            }
+            return list;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * MsbuildProcessTree
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import hudson.EnvVars;
+import hudson.Launcher;
+import hudson.model.TaskListener;
+import org.vx68k.hudson.plugin.bds.resources.Messages;
+
+/**
+ * Tree of the processes started by a build step.  Every process started
+ * with the environment of this object, including the compilers and the
+ * worker nodes started by MSBuild, inherits a variable unique to the build
+ * step, so that all of them can be killed at once when the build step is
+ * aborted or times out.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class MsbuildProcessTree {
+
+    /**
+     * Name of the environment variable which identifies the build step.
+     */
+    public static final String STEP_VARIABLE = "HUDSON_MSBUILD_STEP";
+
+    private static final ScheduledExecutorService TIMER =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "MSBuild step timeout");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final Launcher launcher;
+    private final Map<String, String> cookie;
+
+    private ScheduledFuture<?> timeout = null;
+    private boolean closed = false;
+    private boolean timedOut = false;
+
+    /**
+     * Constructs this object and adds the variable which identifies the
+     * build step to an environment.
+     *
+     * @param launcher {@link Launcher} object for the node
+     * @param env environment variables for the processes
+     */
+    public MsbuildProcessTree(Launcher launcher, EnvVars env) {
+        this.launcher = launcher;
+        this.cookie = Collections.singletonMap(STEP_VARIABLE,
+                UUID.randomUUID().toString());
+        env.putAll(cookie);
+    }
+
+    /**
+     * Interrupts the current thread after a timeout unless this object is
+     * closed before.
+     *
+     * @param minutes timeout in minutes, or zero for no timeout
+     */
+    public void startTimeout(int minutes) {
+        if (minutes > 0) {
+            startTimeout(minutes, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * Interrupts the current thread after a delay unless this object is
+     * closed before.
+     *
+     * @param delay delay
+     * @param unit unit of the delay
+     */
+    protected synchronized void startTimeout(long delay, TimeUnit unit) {
+        final Thread thread = Thread.currentThread();
+        timeout = TIMER.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (MsbuildProcessTree.this) {
+                    if (!closed) {
+                        timedOut = true;
+                        thread.interrupt();
+                    }
+                }
+            }
+        }, delay, unit);
+    }
+
+    /**
+     * Returns <code>true</code> if the timeout has expired.
+     *
+     * @return <code>true</code> if timed out
+     */
+    public synchronized boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * Kills all the processes in this tree and reports how long it took.
+     *
+     * @param listener {@link TaskListener} object
+     * @throws IOException if an I/O exception has occurred
+     * @throws InterruptedException if interrupted
+     */
+    public void kill(TaskListener listener)
+            throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        launcher.kill(cookie);
+        listener.getLogger().println(Messages.getProcessesKilledMessage(
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+    }
+
+    /**
+     * Cancels the timeout.  If it has expired, the interrupt status of the
+     * current thread is cleared so that it does not leak to later build
+     * steps.
+     */
+    public synchronized void close() {
+        closed = true;
+        if (timeout != null) {
+            timeout.cancel(false);
+        }
+        if (timedOut) {
+            Thread.interrupted();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * MsbuildReuseOptions
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import hudson.Extension;
+import hudson.model.AbstractDescribableImpl;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.vx68k.hudson.plugin.bds.resources.Messages;
+
+/**
+ * Options to reuse the results of earlier builds and build steps.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class MsbuildReuseOptions
+        extends AbstractDescribableImpl<MsbuildReuseOptions> {
+
+    private final boolean incremental;
+    private final boolean outputCache;
+    private final boolean nodeReuse;
+    private final int nodeIdleTimeout;
+    private final boolean refreshEnvironment;
+
+    /**
+     * Constructs this object with the default values.
+     */
+    public MsbuildReuseOptions() {
+        this(false, false, false, 0, false);
+    }
+
+    /**
+     * Constructs this object.
+     *
+     * @param incremental <code>true</code> to skip projects whose inputs are
+     * unchanged since they were built successfully in the workspace
+     * @param outputCache <code>true</code> to restore the outputs of
+     * projects from the cache on the controller instead of building them
+     * @param nodeReuse <code>true</code> to keep MSBuild worker nodes alive
+     * for later build steps on the same node
+     * @param nodeIdleTimeout minutes after which idle MSBuild worker nodes
+     * are killed, or zero for the default
+     * @param refreshEnvironment <code>true</code> to resolve the environment
+     * again instead of reusing the one resolved by an earlier build step
+     */
+    @DataBoundConstructor
+    public MsbuildReuseOptions(boolean incremental, boolean outputCache,
+            boolean nodeReuse, int nodeIdleTimeout,
+            boolean refreshEnvironment) {
+        this.incremental = incremental;
+        this.outputCache = outputCache;
+        this.nodeReuse = nodeReuse;
+        this.nodeIdleTimeout = nodeIdleTimeout;
+        this.refreshEnvironment = refreshEnvironment;
+    }
+
+    /**
+     * Returns <code>true</code> if projects whose inputs are unchanged shall
+     * be skipped.
+     *
+     * @return <code>true</code> to skip unchanged projects
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * Returns <code>true</code> if the outputs of projects shall be restored
+     * from the cache on the controller instead of building them.
+     *
+     * @return <code>true</code> to use the output cache
+     */
+    public boolean isOutputCache() {
+        return outputCache;
+    }
+
+    /**
+     * Returns <code>true</code> if MSBuild worker nodes shall be kept alive
+     * for later build steps on the same node.
+     *
+     * @return <code>true</code> to reuse MSBuild worker nodes
+     */
+    public boolean isNodeReuse() {
+        return nodeReuse;
+    }
+
+    /**
+     * Returns the minutes after which idle MSBuild worker nodes are killed.
+     *
+     * @return idle timeout in minutes, or zero for the default
+     */
+    public int getNodeIdleTimeout() {
+        return nodeIdleTimeout;
+    }
+
+    /**
+     * Returns <code>true</code> if the environment shall be resolved again
+     * instead of reusing the one resolved by an earlier build step.
+     *
+     * @return <code>true</code> to refresh the environment
+     */
+    public boolean isRefreshEnvironment() {
+        return refreshEnvironment;
+    }
+
+    /**
+     * Describes {@link MsbuildReuseOptions}.
+     */
+    @Extension
+    public static final class Descriptor
+            extends hudson.model.Descriptor<MsbuildReuseOptions> {
+
+        @Override
+        public String getDisplayName() {
+            return Messages.getReuseOptionsDisplayName();
+        }
+    }
+}
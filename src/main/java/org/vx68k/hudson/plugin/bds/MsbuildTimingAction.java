@@ -0,0 +1,188 @@
+/*
+ * MsbuildTimingAction
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import hudson.model.AbstractBuild;
+import hudson.model.Action;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+import org.vx68k.hudson.plugin.bds.resources.Messages;
+
+/**
+ * Build action which records how long each phase of the MSBuild build steps
+ * took.  It is shown as a summary on the build page and exported through the
+ * remote API.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+@ExportedBean
+public class MsbuildTimingAction implements Action {
+
+    private final List<Step> steps = new CopyOnWriteArrayList<Step>();
+
+    /**
+     * Adds the timings of a build step to a build.
+     *
+     * @param build build to which the timings are added
+     * @param step timings of a build step
+     */
+    public static void addStep(AbstractBuild<?, ?> build, Step step) {
+        MsbuildTimingAction action;
+        synchronized (build) {
+            action = build.getAction(MsbuildTimingAction.class);
+            if (action == null) {
+                action = new MsbuildTimingAction();
+                build.addAction(action);
+            }
+        }
+        action.steps.add(step);
+    }
+
+    /**
+     * Returns the timings of the build steps in the order of completion.
+     *
+     * @return list of the timings of the build steps
+     */
+    @Exported(inline = true)
+    public List<Step> getSteps() {
+        return Collections.unmodifiableList(steps);
+    }
+
+    /**
+     * Returns <code>null</code> not to be shown in the side panel.
+     *
+     * @return <code>null</code>
+     */
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return Messages.getTimingDisplayName();
+    }
+
+    @Override
+    public String getUrlName() {
+        return null;
+    }
+
+    /**
+     * Timings of a build step.
+     */
+    @ExportedBean(defaultVisibility = 2)
+    public static final class Step implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String name;
+        private final String nodeName;
+        private final List<Phase> phases = new ArrayList<Phase>();
+
+        /**
+         * Constructs this object.
+         *
+         * @param name name of the build step (usually a project file)
+         * @param nodeName name of the node on which the build step ran
+         */
+        public Step(String name, String nodeName) {
+            this.name = name;
+            this.nodeName = nodeName;
+        }
+
+        /**
+         * Records a phase which started at a time.
+         *
+         * @param phaseName name of the phase
+         * @param start value of {@link System#nanoTime} when the phase
+         * started
+         * @return value of {@link System#nanoTime} when the phase ended
+         */
+        public long record(String phaseName, long start) {
+            long end = System.nanoTime();
+            synchronized (phases) {
+                phases.add(new Phase(phaseName, end - start));
+            }
+            return end;
+        }
+
+        @Exported
+        public String getName() {
+            return name;
+        }
+
+        @Exported
+        public String getNodeName() {
+            return nodeName;
+        }
+
+        @Exported(inline = true)
+        public List<Phase> getPhases() {
+            synchronized (phases) {
+                return new ArrayList<Phase>(phases);
+            }
+        }
+    }
+
+    /**
+     * Timing of a phase in a build step.
+     */
+    @ExportedBean(defaultVisibility = 3)
+    public static final class Phase implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String name;
+        private final long nanos;
+
+        /**
+         * Constructs this object.
+         *
+         * @param name name of the phase
+         * @param nanos duration in nanoseconds
+         */
+        public Phase(String name, long nanos) {
+            this.name = name;
+            this.nanos = nanos;
+        }
+
+        @Exported
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the duration of this phase.
+         *
+         * @return duration in milliseconds
+         */
+        @Exported
+        public long getDuration() {
+            return TimeUnit.NANOSECONDS.toMillis(nanos);
+        }
+    }
+}
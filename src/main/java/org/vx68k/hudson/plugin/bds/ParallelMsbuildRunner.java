@@ -0,0 +1,406 @@
+/*
+ * ParallelMsbuildRunner
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.Proc;
+import hudson.console.LineTransformationOutputStream;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import org.vx68k.hudson.plugin.bds.resources.Messages;
+
+/**
+ * Runner of MSBuild processes in parallel with bounded concurrency.
+ * The output of each process is written to the build log line by line with
+ * a prefix which identifies the process.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class ParallelMsbuildRunner {
+
+    private final Launcher launcher;
+    private final TaskListener listener;
+    private final EnvVars environment;
+    private final FilePath workingDirectory;
+    private final int parallelism;
+    private final boolean failFast;
+    private final MsbuildOutputParsers parsers;
+
+    private final Set<Proc> running = Collections.newSetFromMap(
+            new ConcurrentHashMap<Proc, Boolean>());
+
+    private volatile boolean stopping = false;
+
+    /**
+     * Constructs this object.
+     *
+     * @param launcher {@link Launcher} object
+     * @param listener {@link TaskListener} object
+     * @param environment environment variables for the processes
+     * @param workingDirectory working directory for the processes
+     * @param parallelism maximum number of concurrent processes
+     * @param failFast <code>true</code> to stop the other processes as soon
+     * as any process fails
+     */
+    public ParallelMsbuildRunner(Launcher launcher, TaskListener listener,
+            EnvVars environment, FilePath workingDirectory, int parallelism,
+            boolean failFast) {
+        this(launcher, listener, environment, workingDirectory, parallelism,
+                failFast, null);
+    }
+
+    /**
+     * Constructs this object with parsers for the output of the processes.
+     *
+     * @param launcher {@link Launcher} object
+     * @param listener {@link TaskListener} object
+     * @param environment environment variables for the processes
+     * @param workingDirectory working directory for the processes
+     * @param parallelism maximum number of concurrent processes
+     * @param failFast <code>true</code> to stop the other processes as soon
+     * as any process fails
+     * @param parsers parsers for the output of the processes, or
+     * <code>null</code> not to parse the output
+     */
+    public ParallelMsbuildRunner(Launcher launcher, TaskListener listener,
+            EnvVars environment, FilePath workingDirectory, int parallelism,
+            boolean failFast, MsbuildOutputParsers parsers) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        this.launcher = launcher;
+        this.listener = listener;
+        this.environment = environment;
+        this.workingDirectory = workingDirectory;
+        this.parallelism = parallelism;
+        this.failFast = failFast;
+        this.parsers = parsers;
+    }
+
+    /**
+     * Returns the number of available processors on a node.
+     *
+     * @param channel {@link VirtualChannel} object for the node
+     * @return number of available processors
+     * @throws IOException if an I/O exception has occurred
+     * @throws InterruptedException if interrupted
+     */
+    public static int getProcessorCount(VirtualChannel channel)
+            throws IOException, InterruptedException {
+        if (channel == null) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        return channel.call(new ProcessorCount());
+    }
+
+    /**
+     * Runs commands in parallel.
+     *
+     * @param commands map from labels to command lines, in the order of
+     * dispatch
+     * @return map from labels to exit statuses of the commands which have
+     * completed, in the order of the given commands
+     * @throws IOException if an I/O exception has occurred
+     * @throws InterruptedException if interrupted
+     */
+    public Map<String, Integer> run(Map<String, List<String>> commands)
+            throws IOException, InterruptedException {
+        return run(commands,
+                Collections.<String, Collection<String>>emptyMap());
+    }
+
+    /**
+     * Runs commands in parallel as their dependencies allow.  A command is
+     * dispatched as soon as all the commands it depends on have succeeded,
+     * and it is skipped if any of them has failed or has been skipped.
+     *
+     * @param commands map from labels to command lines, in the order of
+     * dispatch
+     * @param dependencies map from labels to the labels of the commands
+     * on which they depend; unknown labels are ignored
+     * @return map from labels to exit statuses of the commands which have
+     * completed, in the order of the given commands
+     * @throws IOException if an I/O exception has occurred
+     * @throws InterruptedException if interrupted
+     */
+    public Map<String, Integer> run(Map<String, List<String>> commands,
+            Map<String, ? extends Collection<String>> dependencies)
+            throws IOException, InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(parallelism, Math.max(commands.size(), 1)));
+        CompletionService<Integer> completion =
+                new ExecutorCompletionService<Integer>(executor);
+        Map<Future<Integer>, String> futures =
+                new HashMap<Future<Integer>, String>();
+        Set<String> pending = new LinkedHashSet<String>(commands.keySet());
+        Set<String> skipped = new HashSet<String>();
+        Map<String, Integer> statuses = new HashMap<String, Integer>();
+        try {
+            int outstanding = 0;
+            while (!stopping || outstanding != 0) {
+                if (!stopping) {
+                    outstanding += dispatch(completion, futures, commands,
+                            dependencies, pending, skipped, statuses);
+                }
+                if (outstanding == 0) {
+                    if (!pending.isEmpty()) {
+                        listener.error(Messages.getCyclicDependenciesMessage(
+                                pending));
+                    }
+                    break;
+                }
+
+                Future<Integer> future = completion.take();
+                outstanding -= 1;
+                Integer status = getStatus(future);
+                if (status == null) {
+                    // The process was not started.
+                    continue;
+                }
+                String label = futures.get(future);
+                statuses.put(label, status);
+                listener.getLogger().println(
+                        Messages.getProjectFinishedMessage(label, status));
+                if (status != 0 && failFast && !stopping) {
+                    listener.error(Messages.getStoppingMessage());
+                    stop();
+                }
+            }
+        } catch (IOException exception) {
+            stop();
+            throw exception;
+        } catch (InterruptedException exception) {
+            stop();
+            throw exception;
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Keeps the order of the given commands.
+        Map<String, Integer> ordered = new LinkedHashMap<String, Integer>();
+        for (String label : commands.keySet()) {
+            if (statuses.containsKey(label)) {
+                ordered.put(label, statuses.get(label));
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * Dispatches the pending commands whose dependencies have succeeded and
+     * skips those whose dependencies have failed.
+     *
+     * @return number of the dispatched commands
+     */
+    private int dispatch(CompletionService<Integer> completion,
+            Map<Future<Integer>, String> futures,
+            Map<String, List<String>> commands,
+            Map<String, ? extends Collection<String>> dependencies,
+            Set<String> pending, Set<String> skipped,
+            Map<String, Integer> statuses) {
+        int dispatched = 0;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            Iterator<String> i = pending.iterator();
+            while (i.hasNext()) {
+                final String label = i.next();
+                boolean ready = true;
+                boolean failed = false;
+                Collection<String> required = dependencies.get(label);
+                if (required != null) {
+                    for (String dependency : required) {
+                        if (!commands.containsKey(dependency)) {
+                            continue;
+                        }
+                        Integer status = statuses.get(dependency);
+                        if (skipped.contains(dependency)
+                                || status != null && status != 0) {
+                            failed = true;
+                        } else if (status == null) {
+                            ready = false;
+                        }
+                    }
+                }
+                if (failed) {
+                    i.remove();
+                    skipped.add(label);
+                    listener.error(Messages.getProjectSkippedMessage(label));
+                    // Dependents of this command may be skipped now.
+                    changed = true;
+                } else if (ready) {
+                    i.remove();
+                    final List<String> command = commands.get(label);
+                    futures.put(completion.submit(new Callable<Integer>() {
+                        @Override
+                        public Integer call() throws Exception {
+                            return launch(label, command);
+                        }
+                    }), label);
+                    dispatched += 1;
+                }
+            }
+        }
+        return dispatched;
+    }
+
+    /**
+     * Returns the result of a completed future.
+     *
+     * @param future completed future
+     * @return exit status, or <code>null</code> if the process was not
+     * started
+     * @throws IOException if the process failed with an I/O exception
+     * @throws InterruptedException if interrupted
+     */
+    private static Integer getStatus(Future<Integer> future)
+            throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException exception) {
+            Throwable cause = exception.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof InterruptedException) {
+                return null;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Launches a command and waits for it.
+     *
+     * @param label label of the command
+     * @param command command line
+     * @return exit status, or <code>null</code> if not started
+     * @throws IOException if an I/O exception has occurred
+     * @throws InterruptedException if interrupted
+     */
+    private Integer launch(String label, List<String> command)
+            throws IOException, InterruptedException {
+        if (stopping) {
+            return null;
+        }
+
+        OutputStream prefixed = new PrefixedOutputStream(
+                listener.getLogger(), "[" + label + "] ");
+        OutputStream output = prefixed;
+        if (parsers != null) {
+            output = parsers.open(prefixed);
+        }
+        try {
+            Launcher.ProcStarter starter = launcher.launch();
+            starter.envs(environment);
+            starter.pwd(workingDirectory);
+            starter.stdout(output);
+            starter.stderr(output);
+            starter.cmds(command);
+
+            Proc proc = starter.start();
+            running.add(proc);
+            try {
+                if (stopping) {
+                    proc.kill();
+                }
+                return proc.join();
+            } finally {
+                running.remove(proc);
+            }
+        } finally {
+            output.close();
+            prefixed.close();
+        }
+    }
+
+    /**
+     * Stops all the running processes and prevents new ones from starting.
+     *
+     * @throws IOException if an I/O exception has occurred
+     * @throws InterruptedException if interrupted
+     */
+    private void stop() throws IOException, InterruptedException {
+        stopping = true;
+        for (Proc proc : running) {
+            proc.kill();
+        }
+    }
+
+    /**
+     * Output stream which writes each line atomically with a prefix.
+     */
+    private static final class PrefixedOutputStream
+            extends LineTransformationOutputStream {
+
+        private final PrintStream logger;
+        private final byte[] prefix;
+
+        PrefixedOutputStream(PrintStream logger, String prefix) {
+            this.logger = logger;
+            this.prefix = prefix.getBytes();
+        }
+
+        @Override
+        protected void eol(byte[] b, int len) throws IOException {
+            synchronized (logger) {
+                logger.write(prefix);
+                logger.write(b, 0, len);
+            }
+        }
+    }
+
+    /**
+     * Callable which returns the number of available processors.
+     */
+    private static final class ProcessorCount
+            implements hudson.remoting.Callable<Integer, RuntimeException> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Integer call() {
+            return Runtime.getRuntime().availableProcessors();
+        }
+    }
+}
@@ -0,0 +1,374 @@
+/*
+ * ProjectFingerprints
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import hudson.FilePath;
+import hudson.FilePath.FileCallable;
+import hudson.remoting.VirtualChannel;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Fingerprints of the inputs of MSBuild projects kept in a workspace.
+ * The fingerprint of a project covers the project file, the files included
+ * by its items, the form files next to its units, the include files in the
+ * directories of its sources, the environment variables referred to by the
+ * project file, and a string which represents the other inputs such as
+ * command-line options and build variables.  Units found only through search
+ * paths are not covered.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class ProjectFingerprints {
+
+    /**
+     * Name of the file in a workspace to keep the fingerprints.
+     */
+    private static final String FINGERPRINTS_FILE_NAME =
+            ".bds-fingerprints.properties";
+
+    private static final String DIGEST_ALGORITHM = "SHA-1";
+
+    private static final String[] FORM_EXTENSIONS = {".dfm", ".fmx", ".xfm"};
+
+    private static final String INCLUDE_EXTENSION = ".inc";
+
+    private static final Pattern PROPERTY_REFERENCE =
+            Pattern.compile("\\$\\(([A-Za-z_][A-Za-z0-9_-]*)\\)");
+
+    private final FilePath file;
+    private final Properties fingerprints = new Properties();
+
+    /**
+     * Constructs this object loading the fingerprints kept in a workspace.
+     *
+     * @param workspace workspace
+     * @throws IOException if an I/O exception has occurred
+     * @throws InterruptedException if interrupted
+     */
+    public ProjectFingerprints(FilePath workspace)
+            throws IOException, InterruptedException {
+        file = workspace.child(FINGERPRINTS_FILE_NAME);
+        if (file.exists()) {
+            InputStream stream = file.read();
+            try {
+                fingerprints.load(stream);
+            } finally {
+                stream.close();
+            }
+        }
+    }
+
+    /**
+     * Computes the fingerprint of a project on the node where it is located.
+     *
+     * @param project project file
+     * @param otherInputs string which represents the other inputs
+     * @param env environment variables for MSBuild
+     * @return fingerprint as a hexadecimal string
+     * @throws IOException if an I/O exception has occurred
+     * @throws InterruptedException if interrupted
+     */
+    public static String compute(FilePath project, String otherInputs,
+            Map<String, String> env)
+            throws IOException, InterruptedException {
+        return project.act(new Digester(otherInputs, null, env));
+    }
+
+    /**
+     * Computes the fingerprint of a project with the paths of its input files
+     * relative to a base directory so that it is the same in any workspace.
+     *
+     * @param project project file
+     * @param otherInputs string which represents the other inputs
+     * @param base base directory on the same node as the project
+     * @param env environment variables for MSBuild
+     * @return fingerprint as a hexadecimal string
+     * @throws IOException if an I/O exception has occurred
+     * @throws InterruptedException if interrupted
+     */
+    public static String compute(FilePath project, String otherInputs,
+            FilePath base, Map<String, String> env)
+            throws IOException, InterruptedException {
+        return project.act(new Digester(otherInputs, base.getRemote(), env));
+    }
+
+    /**
+     * Returns <code>true</code> if the kept fingerprint of a project is
+     * equal to a value.
+     *
+     * @param project name of the project file
+     * @param fingerprint fingerprint to compare
+     * @return <code>true</code> if the project is unchanged
+     */
+    public synchronized boolean matches(String project, String fingerprint) {
+        return fingerprint.equals(fingerprints.getProperty(project));
+    }
+
+    /**
+     * Keeps the fingerprint of a project.
+     *
+     * @param project name of the project file
+     * @param fingerprint fingerprint, or <code>null</code> to forget it
+     */
+    public synchronized void put(String project, String fingerprint) {
+        if (fingerprint != null) {
+            fingerprints.setProperty(project, fingerprint);
+        } else {
+            fingerprints.remove(project);
+        }
+    }
+
+    /**
+     * Saves the fingerprints into the workspace.
+     *
+     * @throws IOException if an I/O exception has occurred
+     * @throws InterruptedException if interrupted
+     */
+    public synchronized void save() throws IOException, InterruptedException {
+        OutputStream stream = file.write();
+        try {
+            fingerprints.store(stream, null);
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Collects the input files of a project.
+     *
+     * @param project project file
+     * @return sorted set of the input files
+     * @throws IOException if an I/O exception or a parse error has occurred
+     */
+    protected static SortedSet<File> getInputFiles(File project)
+            throws IOException {
+        Document document = BDSUtilities.parseXml(project);
+
+        File directory = project.getCanonicalFile().getParentFile();
+        SortedSet<File> files = new TreeSet<File>();
+        files.add(project.getCanonicalFile());
+        SortedSet<File> sourceDirectories = new TreeSet<File>();
+        sourceDirectories.add(directory);
+
+        NodeList groups = document.getElementsByTagName("ItemGroup");
+        for (int i = 0; i != groups.getLength(); i += 1) {
+            for (Node item = groups.item(i).getFirstChild(); item != null;
+                    item = item.getNextSibling()) {
+                if (!(item instanceof Element)) {
+                    continue;
+                }
+                String include = ((Element) item).getAttribute("Include");
+                File input = resolve(directory, include);
+                if (input == null) {
+                    continue;
+                }
+                files.add(input);
+                sourceDirectories.add(input.getParentFile());
+                addForms(files, input);
+            }
+        }
+
+        FileFilter includeFilter = new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().toLowerCase()
+                        .endsWith(INCLUDE_EXTENSION);
+            }
+        };
+        for (File sourceDirectory : sourceDirectories) {
+            File[] includes = sourceDirectory.listFiles(includeFilter);
+            if (includes != null) {
+                for (File include : includes) {
+                    files.add(include.getCanonicalFile());
+                }
+            }
+        }
+
+        // The project resource file is not listed as an item.
+        String name = project.getName();
+        int dot = name.lastIndexOf('.');
+        if (dot >= 0) {
+            File resource = new File(directory,
+                    name.substring(0, dot) + ".res");
+            if (resource.isFile()) {
+                files.add(resource.getCanonicalFile());
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Returns the environment variables referred to by a project file as
+     * <code>$(NAME)</code>.
+     *
+     * @param project project file
+     * @param env environment variables for MSBuild
+     * @return sorted map of the referred environment variables
+     * @throws IOException if an I/O exception has occurred
+     */
+    protected static SortedMap<String, String> getReferencedVariables(
+            File project, Map<String, String> env) throws IOException {
+        Map<String, String> variables =
+                new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+        variables.putAll(env);
+
+        StringBuilder content = new StringBuilder();
+        Reader reader = new InputStreamReader(new FileInputStream(project),
+                "UTF-8");
+        try {
+            char[] buffer = new char[8192];
+            int n;
+            while ((n = reader.read(buffer)) >= 0) {
+                content.append(buffer, 0, n);
+            }
+        } finally {
+            reader.close();
+        }
+
+        SortedMap<String, String> referenced =
+                new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+        Matcher matcher = PROPERTY_REFERENCE.matcher(content);
+        while (matcher.find()) {
+            String name = matcher.group(1);
+            if (variables.containsKey(name)) {
+                referenced.put(name, variables.get(name));
+            }
+        }
+        return referenced;
+    }
+
+    private static File resolve(File directory, String path)
+            throws IOException {
+        if (path.isEmpty()) {
+            return null;
+        }
+        File file = new File(path);
+        if (!file.isAbsolute()) {
+            file = new File(directory, path);
+        }
+        if (!file.isFile()) {
+            return null;
+        }
+        return file.getCanonicalFile();
+    }
+
+    private static void addForms(SortedSet<File> files, File source)
+            throws IOException {
+        String name = source.getName();
+        int dot = name.lastIndexOf('.');
+        if (dot < 0) {
+            return;
+        }
+        for (String extension : FORM_EXTENSIONS) {
+            File form = new File(source.getParentFile(),
+                    name.substring(0, dot) + extension);
+            if (form.isFile()) {
+                files.add(form.getCanonicalFile());
+            }
+        }
+    }
+
+    /**
+     * Callable which computes the fingerprint of a project on a node.
+     */
+    private static final class Digester implements FileCallable<String> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String otherInputs;
+        private final String base;
+        private final Map<String, String> env;
+
+        Digester(String otherInputs, String base, Map<String, String> env) {
+            this.otherInputs = otherInputs;
+            this.base = base;
+            this.env = new TreeMap<String, String>(env);
+        }
+
+        @Override
+        public String invoke(File project, VirtualChannel channel)
+                throws IOException {
+            MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+            } catch (NoSuchAlgorithmException exception) {
+                throw new IOException(exception);
+            }
+
+            digest.update(otherInputs.getBytes("UTF-8"));
+            for (Map.Entry<String, String> entry
+                    : getReferencedVariables(project, env).entrySet()) {
+                digest.update((byte) 0);
+                digest.update((entry.getKey() + "=" + entry.getValue())
+                        .getBytes("UTF-8"));
+            }
+            String prefix = null;
+            if (base != null) {
+                prefix = new File(base).getCanonicalPath() + File.separator;
+            }
+            byte[] buffer = new byte[8192];
+            for (File input : getInputFiles(project)) {
+                String path = input.getPath();
+                if (prefix != null && path.startsWith(prefix)) {
+                    path = path.substring(prefix.length());
+                }
+                digest.update((byte) 0);
+                digest.update(path.getBytes("UTF-8"));
+                digest.update((byte) 0);
+                InputStream stream = new FileInputStream(input);
+                try {
+                    int n;
+                    while ((n = stream.read(buffer)) >= 0) {
+                        digest.update(buffer, 0, n);
+                    }
+                } finally {
+                    stream.close();
+                }
+            }
+
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b & 0xff));
+            }
+            return hex.toString();
+        }
+    }
+}
@@ -0,0 +1,815 @@
+/*
+ * ProjectOutputCache
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.FilePath.FileCallable;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Hudson;
+import hudson.model.TaskListener;
+import hudson.remoting.RemoteOutputStream;
+import hudson.remoting.VirtualChannel;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Content-addressed cache of the outputs of MSBuild projects kept on the
+ * controller.  The outputs of a project are archived under a key computed
+ * from its inputs in the same way as {@link ProjectFingerprints} but with
+ * paths relative to the workspace, so that they can be restored into any
+ * workspace on any node.  Archives are pruned once a day, the least
+ * recently used first, when they are older than {@link #MAX_AGE} or exceed
+ * {@link #MAX_SIZE} in total.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class ProjectOutputCache {
+
+    /**
+     * Time in milliseconds after its last use for which an archive is kept.
+     */
+    public static final long MAX_AGE = Long.getLong(
+            ProjectOutputCache.class.getName() + ".maxAge",
+            TimeUnit.DAYS.toMillis(30));
+
+    /**
+     * Total size in bytes of the archives to be kept.
+     */
+    public static final long MAX_SIZE = Long.getLong(
+            ProjectOutputCache.class.getName() + ".maxSize", 10L << 30);
+
+    /**
+     * Name of the cache directory in the Hudson root directory.
+     */
+    private static final String CACHE_DIRECTORY_NAME = "bds-output-cache";
+
+    private static final String ARCHIVE_EXTENSION = ".zip";
+
+    /**
+     * Version of the cache keys.  It shall be changed whenever the archives
+     * stored under the earlier keys must no longer be restored.
+     */
+    private static final String KEY_VERSION = "2";
+
+    /**
+     * Project properties which name output directories.
+     */
+    private static final String[] OUTPUT_PROPERTIES = {
+        "DCC_DcuOutput",
+        "DCC_ExeOutput",
+        "DCC_BplOutput",
+        "DCC_DcpOutput",
+        "FinalOutputDir",
+        "IntermediateOutputDir",
+        "BPILibOutputDir",
+    };
+
+    /**
+     * Output directories of Delphi packages which default to the shared
+     * package directories under <code>$(BDSCOMMONDIR)</code>.
+     */
+    private static final String[] DELPHI_PACKAGE_OUTPUT_PROPERTIES = {
+        "DCC_BplOutput",
+        "DCC_DcpOutput",
+    };
+
+    /**
+     * Output directories of C++ packages which default to the shared
+     * package directories under <code>$(BDSCOMMONDIR)</code>.
+     */
+    private static final String[] CPP_PACKAGE_OUTPUT_PROPERTIES = {
+        "FinalOutputDir",
+        "BPILibOutputDir",
+    };
+
+    private static final Pattern PROPERTY_REFERENCE =
+            Pattern.compile("\\$\\(([A-Za-z_][A-Za-z0-9_-]*)\\)");
+
+    /**
+     * Output directory used when a project names none.
+     */
+    private static final String DEFAULT_OUTPUT_DIRECTORY =
+            ".\\$(Platform)\\$(Config)";
+
+    /**
+     * Project items whose names are shared by their outputs.
+     */
+    private static final String[] SOURCE_ITEMS = {
+        "DelphiCompile",
+        "DCCReference",
+        "CppCompile",
+    };
+
+    /**
+     * Project properties which are appended to the names of packages.
+     */
+    private static final String[] SUFFIX_PROPERTIES = {
+        "DllSuffix",
+        "LibSuffix",
+    };
+
+    private static final String[] OUTPUT_EXTENSIONS = {
+        ".dcu", ".dcp", ".bpl", ".bpi", ".lib", ".a", ".o", ".obj", ".exe",
+        ".dll", ".so", ".dylib", ".apk",
+    };
+
+    /**
+     * Allowance for the resolution of file modification times.
+     */
+    private static final long TIME_RESOLUTION = 2000;
+
+    private final FilePath directory;
+
+    /**
+     * Constructs this object with a cache directory.
+     *
+     * @param directory cache directory
+     */
+    public ProjectOutputCache(FilePath directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the cache in the Hudson root directory.
+     *
+     * @return cache on the controller
+     */
+    public static ProjectOutputCache getDefault() {
+        return new ProjectOutputCache(new FilePath(new File(
+                Hudson.getInstance().getRootDir(), CACHE_DIRECTORY_NAME)));
+    }
+
+    /**
+     * Computes the cache key of a project.
+     *
+     * @param workspace workspace
+     * @param project project file in the workspace
+     * @param otherInputs string which represents the other inputs
+     * @param env environment variables for MSBuild
+     * @return cache key
+     * @throws IOException if an I/O exception has occurred
+     * @throws InterruptedException if interrupted
+     */
+    public static String computeKey(FilePath workspace, FilePath project,
+            String otherInputs, Map<String, String> env)
+            throws IOException, InterruptedException {
+        return ProjectFingerprints.compute(project,
+                KEY_VERSION + "\n" + otherInputs, workspace, env);
+    }
+
+    /**
+     * Returns the current time on a node to be passed to {@link #store}.
+     *
+     * @param channel {@link VirtualChannel} object for the node
+     * @return current time in milliseconds on the node
+     * @throws IOException if an I/O exception has occurred
+     * @throws InterruptedException if interrupted
+     */
+    public static long getNodeTime(VirtualChannel channel)
+            throws IOException, InterruptedException {
+        if (channel == null) {
+            return System.currentTimeMillis();
+        }
+        return channel.call(new NodeTime());
+    }
+
+    /**
+     * Returns <code>true</code> if the outputs of a project are cached.
+     *
+     * @param key cache key of the project
+     * @return <code>true</code> if cached
+     * @throws IOException if an I/O exception has occurred
+     * @throws InterruptedException if interrupted
+     */
+    public boolean contains(String key)
+            throws IOException, InterruptedException {
+        return directory.child(key + ARCHIVE_EXTENSION).exists();
+    }
+
+    /**
+     * Restores the outputs of a project into a workspace.  The archive is
+     * streamed to the node of the workspace and marked as used.
+     *
+     * @param key cache key of the project
+     * @param workspace workspace
+     * @return <code>true</code> if the outputs were restored, or
+     * <code>false</code> if they are not cached
+     * @throws IOException if an I/O exception has occurred
+     * @throws InterruptedException if interrupted
+     */
+    public boolean restore(String key, FilePath workspace)
+            throws IOException, InterruptedException {
+        FilePath archive = directory.child(key + ARCHIVE_EXTENSION);
+        InputStream stream;
+        try {
+            stream = archive.read();
+        } catch (FileNotFoundException exception) {
+            // It may have been pruned.
+            return false;
+        }
+        try {
+            workspace.unzipFrom(stream);
+        } finally {
+            stream.close();
+        }
+        archive.act(new Toucher());
+        return true;
+    }
+
+    /**
+     * Deletes the archives which are older than a time or exceed a total
+     * size, the least recently used first.
+     *
+     * @param maxAge time in milliseconds after its last use for which an
+     * archive is kept
+     * @param maxSize total size in bytes of the archives to be kept
+     * @return number of the deleted archives
+     * @throws IOException if an I/O exception has occurred
+     * @throws InterruptedException if interrupted
+     */
+    public int prune(long maxAge, long maxSize)
+            throws IOException, InterruptedException {
+        if (!directory.exists()) {
+            return 0;
+        }
+        return directory.act(new Pruner(maxAge, maxSize));
+    }
+
+    /**
+     * Stores the outputs of a project which were written since a time.
+     * Nothing is stored unless all the outputs can be restored from the
+     * archive.
+     *
+     * @param key cache key of the project
+     * @param workspace workspace
+     * @param project project file in the workspace
+     * @param properties MSBuild properties given on the command line
+     * @param env environment variables for MSBuild
+     * @param since time on the node when the project started to be built
+     * @return number of the stored files, or -1 if the outputs of the project
+     * cannot be cached
+     * @throws IOException if an I/O exception has occurred
+     * @throws InterruptedException if interrupted
+     */
+    public int store(String key, FilePath workspace, FilePath project,
+            Map<String, String> properties, Map<String, String> env,
+            long since) throws IOException, InterruptedException {
+        directory.mkdirs();
+        FilePath archive = directory.child(key + ARCHIVE_EXTENSION);
+        FilePath temporary = directory.createTempFile(key, ".tmp");
+        OutputStream stream = temporary.write();
+        int count;
+        try {
+            OutputStream output = stream;
+            if (project.isRemote()) {
+                output = new RemoteOutputStream(stream);
+            }
+            count = project.act(new Archiver(workspace.getRemote(),
+                    properties, env, since, output));
+        } finally {
+            stream.close();
+        }
+        if (count <= 0) {
+            temporary.delete();
+        } else {
+            // Other builds never see a partial archive.
+            temporary.renameTo(archive);
+        }
+        return count;
+    }
+
+    /**
+     * Deletes the archives in a directory which are older than a time or
+     * exceed a total size, the least recently used first.
+     *
+     * @param directory cache directory
+     * @param maxAge time in milliseconds after its last use for which an
+     * archive is kept
+     * @param maxSize total size in bytes of the archives to be kept
+     * @return number of the deleted archives
+     */
+    protected static int prune(File directory, long maxAge, long maxSize) {
+        File[] archives = directory.listFiles();
+        if (archives == null) {
+            return 0;
+        }
+        // Times are taken once since restores may change them.
+        final Map<File, Long> times = new HashMap<File, Long>();
+        for (File archive : archives) {
+            times.put(archive, archive.lastModified());
+        }
+        Arrays.sort(archives, new Comparator<File>() {
+            @Override
+            public int compare(File one, File another) {
+                return times.get(another).compareTo(times.get(one));
+            }
+        });
+
+        long limit = System.currentTimeMillis() - maxAge;
+        long total = 0;
+        int count = 0;
+        for (File archive : archives) {
+            if (!archive.getName().endsWith(ARCHIVE_EXTENSION)) {
+                // Archives being stored are left.
+                continue;
+            }
+            total += archive.length();
+            if ((times.get(archive) < limit || total > maxSize)
+                    && archive.delete()) {
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the MSBuild properties given by <code>/p</code> options.
+     *
+     * @param command MSBuild command line
+     * @return case-insensitive map of the properties
+     */
+    public static Map<String, String> getProperties(List<String> command) {
+        Map<String, String> properties =
+                new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+        for (String arg : command) {
+            if (!arg.startsWith("/") && !arg.startsWith("-")) {
+                continue;
+            }
+            int colon = arg.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String name = arg.substring(1, colon);
+            if (!name.equalsIgnoreCase("p")
+                    && !name.equalsIgnoreCase("property")) {
+                continue;
+            }
+            for (String property : arg.substring(colon + 1).split(";")) {
+                int equals = property.indexOf('=');
+                if (equals > 0) {
+                    properties.put(property.substring(0, equals).trim(),
+                            property.substring(equals + 1).trim());
+                }
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Collects the output files of a project which were written since a
+     * time.  Only the files named after the project or its source items are
+     * collected so that those of other projects built at the same time into
+     * a shared directory are not taken.  If any output directory is not known
+     * without evaluating the project or is outside the workspace, as the
+     * default package directories under <code>$(BDSCOMMONDIR)</code>, the
+     * project is not cacheable since its archive would miss some outputs.
+     *
+     * @param project project file
+     * @param workspace workspace which contains the project
+     * @param properties MSBuild properties given on the command line
+     * @param env environment variables for MSBuild
+     * @param since time when the project started to be built
+     * @return sorted set of the output files, or <code>null</code> if the
+     * project is not cacheable
+     * @throws IOException if an I/O exception or a parse error has occurred
+     */
+    protected static SortedSet<File> getOutputFiles(File project,
+            File workspace, Map<String, String> properties,
+            Map<String, String> env, long since) throws IOException {
+        Document document = BDSUtilities.parseXml(project);
+
+        Set<String> paths = new HashSet<String>();
+        for (String name : OUTPUT_PROPERTIES) {
+            paths.addAll(getOutputPaths(document, name, properties, env));
+        }
+        String[] packageProperties = getPackageOutputProperties(document);
+        if (packageProperties != null) {
+            for (String name : packageProperties) {
+                if (getOutputPaths(document, name, properties, env)
+                        .isEmpty()) {
+                    // The package would be put into the shared directory.
+                    return null;
+                }
+            }
+        }
+        if (paths.isEmpty()) {
+            paths.add(DEFAULT_OUTPUT_DIRECTORY);
+        }
+
+        Set<String> names = new HashSet<String>();
+        boolean numbered = getOutputNames(document, project, properties,
+                names);
+
+        String prefix = workspace.getCanonicalPath() + File.separator;
+        File base = project.getCanonicalFile().getParentFile();
+        SortedSet<File> files = new TreeSet<File>();
+        for (String path : paths) {
+            path = expand(path, document, properties, env);
+            if (path == null) {
+                return null;
+            }
+            if (path.isEmpty()) {
+                continue;
+            }
+            File outputDirectory = new File(path.replace('\\',
+                    File.separatorChar));
+            if (!outputDirectory.isAbsolute()) {
+                outputDirectory = new File(base, outputDirectory.getPath());
+            }
+            outputDirectory = outputDirectory.getCanonicalFile();
+            if (!(outputDirectory.getPath() + File.separator)
+                    .startsWith(prefix)) {
+                return null;
+            }
+            File[] outputs = outputDirectory.listFiles();
+            if (outputs == null) {
+                continue;
+            }
+            for (File output : outputs) {
+                if (output.isFile() && isOutput(output.getName())
+                        && isNamed(output.getName(), names, numbered)
+                        && output.lastModified() >= since - TIME_RESOLUTION) {
+                    output = output.getCanonicalFile();
+                    if (!output.getPath().startsWith(prefix)) {
+                        // It may be a link to a file outside the workspace.
+                        return null;
+                    }
+                    files.add(output);
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Returns the paths an output property of a project may have.  Those
+     * given on the command line override the project, which overrides the
+     * environment variables.
+     */
+    private static Set<String> getOutputPaths(Document document, String name,
+            Map<String, String> properties, Map<String, String> env) {
+        Set<String> paths = new HashSet<String>();
+        if (properties.containsKey(name)) {
+            paths.add(properties.get(name).trim());
+            return paths;
+        }
+        NodeList elements = document.getElementsByTagName(name);
+        for (int i = 0; i != elements.getLength(); i += 1) {
+            paths.add(elements.item(i).getTextContent().trim());
+        }
+        if (paths.isEmpty() && env.containsKey(name)) {
+            paths.add(env.get(name).trim());
+        }
+        return paths;
+    }
+
+    /**
+     * Returns the output properties which must be set for a package project
+     * to be cacheable.
+     *
+     * @return array of the property names, or <code>null</code> if the
+     * project is not a package
+     */
+    private static String[] getPackageOutputProperties(Document document) {
+        NodeList elements = document.getElementsByTagName("ProjectType");
+        for (int i = 0; i != elements.getLength(); i += 1) {
+            if (elements.item(i).getTextContent().trim()
+                    .equalsIgnoreCase("CppPackage")) {
+                return CPP_PACKAGE_OUTPUT_PROPERTIES;
+            }
+        }
+        elements = document.getElementsByTagName("AppType");
+        for (int i = 0; i != elements.getLength(); i += 1) {
+            if (elements.item(i).getTextContent().trim()
+                    .equalsIgnoreCase("Package")) {
+                return DELPHI_PACKAGE_OUTPUT_PROPERTIES;
+            }
+        }
+        elements = document.getElementsByTagName("DelphiCompile");
+        for (int i = 0; i != elements.getLength(); i += 1) {
+            String include = ((Element) elements.item(i))
+                    .getAttribute("Include");
+            if (include.toLowerCase().endsWith(".dpk")) {
+                return DELPHI_PACKAGE_OUTPUT_PROPERTIES;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Expands the property references in a path.
+     *
+     * @return expanded path, or <code>null</code> if any reference cannot be
+     * resolved without evaluating the project
+     */
+    private static String expand(String path, Document document,
+            Map<String, String> properties, Map<String, String> env) {
+        StringBuffer expanded = new StringBuffer();
+        Matcher matcher = PROPERTY_REFERENCE.matcher(path);
+        while (matcher.find()) {
+            String value = getPropertyValue(matcher.group(1), document,
+                    properties, env);
+            if (value == null) {
+                return null;
+            }
+            matcher.appendReplacement(expanded,
+                    Matcher.quoteReplacement(value));
+        }
+        matcher.appendTail(expanded);
+        if (expanded.indexOf("$(") >= 0) {
+            return null;
+        }
+        return expanded.toString();
+    }
+
+    /**
+     * Returns the value of a property referred to by an output path.  A
+     * property may be defined by the project only as a default such as
+     * <code>&lt;Config Condition="'$(Config)'==''"&gt;</code>, which the
+     * command line and the environment variables override.
+     *
+     * @return value of the property, or <code>null</code> if it is not known
+     * without evaluating the project
+     */
+    private static String getPropertyValue(String name, Document document,
+            Map<String, String> properties, Map<String, String> env) {
+        if (properties.containsKey(name)) {
+            return properties.get(name).trim();
+        }
+        String defaultValue = null;
+        NodeList elements = document.getElementsByTagName(name);
+        for (int i = 0; i != elements.getLength(); i += 1) {
+            Element element = (Element) elements.item(i);
+            String condition = element.getAttribute("Condition")
+                    .replaceAll("\\s", "");
+            if (!condition.equalsIgnoreCase("'$(" + name + ")'==''")) {
+                return null;
+            }
+            defaultValue = element.getTextContent().trim();
+        }
+        if (env.containsKey(name)) {
+            return env.get(name).trim();
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Collects the lower-case base names of the outputs of a project.
+     *
+     * @param document project document
+     * @param project project file
+     * @param properties MSBuild properties given on the command line
+     * @param names set to which the names are added
+     * @return <code>true</code> if packages may have a numeric suffix which
+     * is not known without evaluating the project
+     */
+    private static boolean getOutputNames(Document document, File project,
+            Map<String, String> properties, Set<String> names) {
+        String projectName = getBaseName(project.getName());
+        names.add(projectName);
+        for (String item : SOURCE_ITEMS) {
+            NodeList elements = document.getElementsByTagName(item);
+            for (int i = 0; i != elements.getLength(); i += 1) {
+                Element element = (Element) elements.item(i);
+                names.add(getBaseName(element.getAttribute("Include")));
+            }
+        }
+
+        boolean numbered = false;
+        for (String name : SUFFIX_PROPERTIES) {
+            Set<String> suffixes = new HashSet<String>();
+            if (properties.containsKey(name)) {
+                suffixes.add(properties.get(name).trim());
+            } else {
+                NodeList elements = document.getElementsByTagName(name);
+                for (int i = 0; i != elements.getLength(); i += 1) {
+                    suffixes.add(elements.item(i).getTextContent().trim());
+                }
+            }
+            for (String suffix : suffixes) {
+                if (suffix.contains("$(")) {
+                    // For example, '$(Auto)' for the product version.
+                    numbered = true;
+                } else {
+                    names.add(projectName + suffix.toLowerCase());
+                }
+            }
+        }
+        return numbered;
+    }
+
+    private static String getBaseName(String path) {
+        int slash = Math.max(path.lastIndexOf('\\'), path.lastIndexOf('/'));
+        String name = path.substring(slash + 1);
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) {
+            name = name.substring(0, dot);
+        }
+        return name.toLowerCase();
+    }
+
+    private static boolean isNamed(String fileName, Set<String> names,
+            boolean numbered) {
+        String name = getBaseName(fileName);
+        if (names.contains(name)) {
+            return true;
+        }
+        if (numbered) {
+            // The name of the project may end with digits as well.
+            int end = name.length();
+            while (end > 0 && Character.isDigit(name.charAt(end - 1))) {
+                end -= 1;
+                if (names.contains(name.substring(0, end))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isOutput(String name) {
+        name = name.toLowerCase();
+        for (String extension : OUTPUT_EXTENSIONS) {
+            if (name.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Callable which archives the outputs of a project in the workspace.
+     */
+    private static final class Archiver implements FileCallable<Integer> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String workspace;
+        private final Map<String, String> properties;
+        private final Map<String, String> env;
+        private final long since;
+        private final OutputStream output;
+
+        Archiver(String workspace, Map<String, String> properties,
+                Map<String, String> env, long since, OutputStream output) {
+            this.workspace = workspace;
+            this.properties =
+                    new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+            this.properties.putAll(properties);
+            this.env =
+                    new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+            this.env.putAll(env);
+            this.since = since;
+            this.output = output;
+        }
+
+        @Override
+        public Integer invoke(File project, VirtualChannel channel)
+                throws IOException {
+            File base = new File(workspace).getCanonicalFile();
+            String prefix = base.getPath() + File.separator;
+            int count = 0;
+            ZipOutputStream zip = new ZipOutputStream(output);
+            try {
+                SortedSet<File> files =
+                        getOutputFiles(project, base, properties, env, since);
+                if (files == null) {
+                    return -1;
+                }
+                byte[] buffer = new byte[8192];
+                for (File file : files) {
+                    String path = file.getPath();
+                    ZipEntry entry = new ZipEntry(path.substring(
+                            prefix.length()).replace(File.separatorChar, '/'));
+                    entry.setTime(file.lastModified());
+                    zip.putNextEntry(entry);
+                    InputStream stream = new FileInputStream(file);
+                    try {
+                        int n;
+                        while ((n = stream.read(buffer)) >= 0) {
+                            zip.write(buffer, 0, n);
+                        }
+                    } finally {
+                        stream.close();
+                    }
+                    zip.closeEntry();
+                    count += 1;
+                }
+            } finally {
+                zip.close();
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Callable which marks an archive as used now.
+     */
+    private static final class Toucher implements FileCallable<Boolean> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Boolean invoke(File archive, VirtualChannel channel) {
+            // Unlike {@link FilePath#touch}, a pruned archive is not created.
+            return archive.setLastModified(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Callable which deletes the archives in the cache directory.
+     */
+    private static final class Pruner implements FileCallable<Integer> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long maxAge;
+        private final long maxSize;
+
+        Pruner(long maxAge, long maxSize) {
+            this.maxAge = maxAge;
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public Integer invoke(File directory, VirtualChannel channel) {
+            return prune(directory, maxAge, maxSize);
+        }
+    }
+
+    /**
+     * Periodic work which prunes the cache on the controller.
+     */
+    @Extension
+    public static final class PeriodicPruning extends AsyncPeriodicWork {
+
+        public PeriodicPruning() {
+            super("RAD Studio output cache pruning");
+        }
+
+        @Override
+        public long getRecurrencePeriod() {
+            return DAY;
+        }
+
+        @Override
+        protected void execute(TaskListener listener)
+                throws IOException, InterruptedException {
+            getDefault().prune(MAX_AGE, MAX_SIZE);
+        }
+    }
+
+    /**
+     * Callable which returns the current time.
+     */
+    private static final class NodeTime
+            implements hudson.remoting.Callable<Long, RuntimeException> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Long call() {
+            return System.currentTimeMillis();
+        }
+    }
+}
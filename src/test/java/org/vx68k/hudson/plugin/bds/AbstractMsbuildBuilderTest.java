@@ -0,0 +1,132 @@
+/*
+ * AbstractMsbuildBuilderTest
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Collection of unit tests for {@link AbstractMsbuildBuilder}.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class AbstractMsbuildBuilderTest {
+
+    private static final List<String> TEST_PROJECTS = Arrays.asList(
+            "Core.dproj", "Ui.dproj", "Db.dproj", "App.dproj");
+
+    @Test
+    public void testParsePartition() {
+        int[] slice = AbstractMsbuildBuilder.parsePartition(" 2 / 4 ");
+        assertEquals(2, slice[0]);
+        assertEquals(4, slice[1]);
+        assertNull(AbstractMsbuildBuilder.parsePartition("0/4"));
+        assertNull(AbstractMsbuildBuilder.parsePartition("5/4"));
+        assertNull(AbstractMsbuildBuilder.parsePartition("2"));
+        assertNull(AbstractMsbuildBuilder.parsePartition("a/b"));
+    }
+
+    @Test
+    public void testSelectPartition() {
+        Map<String, List<String>> dependencies =
+                new HashMap<String, List<String>>();
+        assertEquals(Arrays.asList("Core.dproj", "Db.dproj"),
+                AbstractMsbuildBuilder.selectPartition(TEST_PROJECTS,
+                        dependencies, 1, 2));
+        assertEquals(Arrays.asList("Ui.dproj", "App.dproj"),
+                AbstractMsbuildBuilder.selectPartition(TEST_PROJECTS,
+                        dependencies, 2, 2));
+        assertTrue(AbstractMsbuildBuilder.selectPartition(TEST_PROJECTS,
+                dependencies, 5, 5).isEmpty());
+    }
+
+    @Test
+    public void testSelectPartitionWithDependencies() {
+        Map<String, List<String>> dependencies =
+                new HashMap<String, List<String>>();
+        dependencies.put("Ui.dproj", Collections.singletonList("Core.dproj"));
+        dependencies.put("App.dproj", Arrays.asList("Ui.dproj", "Db.dproj"));
+        assertEquals(TEST_PROJECTS,
+                AbstractMsbuildBuilder.selectPartition(TEST_PROJECTS,
+                        dependencies, 2, 2));
+        assertEquals(Arrays.asList("Core.dproj", "Ui.dproj"),
+                AbstractMsbuildBuilder.selectPartition(TEST_PROJECTS,
+                        dependencies, 2, 3));
+    }
+
+    @Test
+    public void testGetMatrixDependencies() {
+        Map<String, List<String>> dependencies =
+                new HashMap<String, List<String>>();
+        dependencies.put("Ui.dproj", Collections.singletonList("Core.dproj"));
+        List<MsbuildMatrixCell> cells =
+                MsbuildMatrixCell.expand("Win32 Win64", null);
+        Map<String, List<String>> expanded =
+                AbstractMsbuildBuilder.getMatrixDependencies(dependencies,
+                        cells);
+        assertEquals(2, expanded.size());
+        assertEquals(Collections.singletonList("Core.dproj|Win32"),
+                expanded.get("Ui.dproj|Win32"));
+        assertEquals(Collections.singletonList("Core.dproj|Win64"),
+                expanded.get("Ui.dproj|Win64"));
+    }
+
+    @Test
+    public void testCountMatrixResults() {
+        MsbuildMatrixCell cell = new MsbuildMatrixCell("Win32", "Debug");
+        Map<String, List<String>> commands =
+                new LinkedHashMap<String, List<String>>();
+        for (String project : TEST_PROJECTS.subList(1, 4)) {
+            commands.put(cell.getLabel(project),
+                    Collections.singletonList(project));
+        }
+        Map<String, Integer> statuses = new HashMap<String, Integer>();
+        statuses.put("Ui.dproj|Win32|Debug", 0);
+        statuses.put("Db.dproj|Win32|Debug", 1);
+        // Core.dproj was unchanged and App.dproj was not built.
+        int[] counts = AbstractMsbuildBuilder.countMatrixResults(
+                TEST_PROJECTS, cell, commands, statuses);
+        assertEquals(2, counts[0]);
+        assertEquals(1, counts[1]);
+        assertEquals(1, counts[2]);
+    }
+
+    @Test
+    public void testAddPropertyNames() {
+        Set<String> names = new HashSet<String>();
+        AbstractMsbuildBuilder.addPropertyNames("/t:Build", names);
+        AbstractMsbuildBuilder.addPropertyNames("/m:2", names);
+        assertTrue(names.isEmpty());
+        AbstractMsbuildBuilder.addPropertyNames(
+                "/p:DCC_BplOutput=C:\\Bpl", names);
+        AbstractMsbuildBuilder.addPropertyNames(
+                "-property:Config=Release;dcc_dcpoutput=C:\\Dcp", names);
+        assertEquals(new HashSet<String>(Arrays.asList("DCC_BPLOUTPUT",
+                "CONFIG", "DCC_DCPOUTPUT")), names);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * BDSBuilderTest
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.vx68k.hudson.plugin.bds;
+
+import java.lang.reflect.Field;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Collection of unit tests for {@link BDSBuilder}.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class BDSBuilderTest {
+
+    private static void setField(Class<?> type, Object object, String name,
+            Object value) throws Exception {
+        Field field = type.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(object, value);
+    }
+
+    @Test
+    public void testReadResolve() throws Exception {
+        BDSBuilder builder =
+                new BDSBuilder("Project1.dproj", "/v:m", "RAD Studio");
+        assertSame(builder, builder.readResolve());
+
+        // As read from a configuration saved with the ungrouped options.
+        setField(AbstractMsbuildBuilder.class, builder, "parallelOptions",
+                null);
+        setField(AbstractMsbuildBuilder.class, builder, "matrixOptions", null);
+        setField(AbstractMsbuildBuilder.class, builder, "reuseOptions", null);
+        setField(AbstractMsbuildBuilder.class, builder, "logOptions", null);
+        setField(BDSBuilder.class, builder, "isolationOptions", null);
+        setField(BDSBuilder.class, builder, "parallelism", 4);
+        setField(BDSBuilder.class, builder, "failFast", true);
+        setField(BDSBuilder.class, builder, "partition", "2/4");
+        setField(BDSBuilder.class, builder, "platforms", "Win32 Win64");
+        setField(BDSBuilder.class, builder, "incremental", true);
+        setField(BDSBuilder.class, builder, "nodeIdleTimeout", 10);
+        setField(BDSBuilder.class, builder, "performanceSummary", true);
+        setField(BDSBuilder.class, builder, "executorIsolation", true);
+
+        BDSBuilder resolved = (BDSBuilder) builder.readResolve();
+        assertNotSame(builder, resolved);
+        assertEquals("Project1.dproj", resolved.getProjectFile());
+        assertEquals("/v:m", resolved.getOptions());
+        assertEquals("RAD Studio", resolved.getInstallationName());
+        assertEquals(4, resolved.getParallelOptions().getParallelism());
+        assertTrue(resolved.getParallelOptions().isFailFast());
+        assertFalse(resolved.getParallelOptions().isParallelGroups());
+        assertEquals("2/4", resolved.getParallelOptions().getPartition());
+        assertEquals("Win32 Win64",
+                resolved.getMatrixOptions().getPlatforms());
+        assertNull(resolved.getMatrixOptions().getConfigurations());
+        assertTrue(resolved.getReuseOptions().isIncremental());
+        assertFalse(resolved.getReuseOptions().isOutputCache());
+        assertEquals(10, resolved.getReuseOptions().getNodeIdleTimeout());
+        assertFalse(resolved.getLogOptions().isDetailedLog());
+        assertTrue(resolved.getLogOptions().isPerformanceSummary());
+        assertTrue(resolved.getIsolationOptions().isExecutorIsolation());
+        assertFalse(resolved.getIsolationOptions().isIsolationCleanup());
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * BDSExecutorIsolationTest
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.vx68k.hudson.plugin.bds;
+
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Collection of unit tests for {@link BDSExecutorIsolation}.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class BDSExecutorIsolationTest {
+
+    @Test
+    public void testGetDirectoryName() {
+        assertEquals("RAD_Studio_XE7@2",
+                BDSExecutorIsolation.getDirectoryName("RAD Studio XE7", 2));
+        assertEquals("default@0",
+                BDSExecutorIsolation.getDirectoryName(null, 0));
+    }
+
+    @Test
+    public void testGetVariables() {
+        Map<String, String> variables = BDSExecutorIsolation.getVariables(
+                "C:\\hudson\\bds-executors\\XE7@1");
+        assertEquals("C:\\hudson\\bds-executors\\XE7@1\\Common",
+                variables.get("BDSCOMMONDIR"));
+        assertEquals("C:\\hudson\\bds-executors\\XE7@1\\Common\\Bpl",
+                variables.get("DCC_BplOutput"));
+        assertEquals("C:\\hudson\\bds-executors\\XE7@1\\Common\\Dcp",
+                variables.get("DCC_DcpOutput"));
+        assertEquals("C:\\hudson\\bds-executors\\XE7@1\\Temp",
+                variables.get("TEMP"));
+        assertEquals(variables.get("TEMP"), variables.get("TMP"));
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * BDSInstallationDiscoveryTest
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Collection of unit tests for {@link BDSInstallationDiscovery}.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class BDSInstallationDiscoveryTest {
+
+    private static final String TEST_NODE = "windows";
+    private static final String TEST_VERSION = "17.0";
+    private static final String TEST_ROOT =
+            "C:\\Program Files (x86)\\Embarcadero\\Studio\\17.0";
+
+    private BDSInstallationDiscovery discovery;
+
+    @Before
+    public void setUp() {
+        discovery = new BDSInstallationDiscovery(1000);
+    }
+
+    @Test
+    public void testParseRegistryOutput() {
+        Map<String, String> installations = new TreeMap<String, String>();
+        BDSInstallationDiscovery.parseRegistryOutput(Arrays.asList(
+                "",
+                "HKEY_LOCAL_MACHINE\\SOFTWARE\\Wow6432Node\\Embarcadero\\BDS"
+                        + "\\17.0",
+                "    RootDir    REG_SZ    " + TEST_ROOT + "\\",
+                "",
+                "HKEY_LOCAL_MACHINE\\SOFTWARE\\Wow6432Node\\Embarcadero\\BDS"
+                        + "\\17.0\\Globals",
+                "HKEY_LOCAL_MACHINE\\SOFTWARE\\Wow6432Node\\Embarcadero\\BDS"
+                        + "\\9.0",
+                "    RootDir    REG_SZ    C:\\RAD Studio\\9.0\\",
+                "",
+                "End of search: 2 match(es) found."), installations);
+        assertEquals(2, installations.size());
+        assertEquals(TEST_ROOT, installations.get(TEST_VERSION));
+        assertEquals("C:\\RAD Studio\\9.0", installations.get("9.0"));
+    }
+
+    @Test
+    public void testExpiry() {
+        Map<String, String> installations =
+                Collections.singletonMap(TEST_VERSION, TEST_ROOT);
+        assertTrue(discovery.put(TEST_NODE, installations, 0));
+        assertEquals(installations, discovery.get(TEST_NODE, 999));
+        assertNull(discovery.get("", 999));
+        assertNull(discovery.get(TEST_NODE, 1000));
+    }
+
+    @Test
+    public void testChange() {
+        Map<String, String> installations =
+                Collections.singletonMap(TEST_VERSION, TEST_ROOT);
+        assertTrue(discovery.put(TEST_NODE, installations, 0));
+        assertFalse(discovery.put(TEST_NODE, installations, 500));
+        // An expired result is still compared.
+        assertFalse(discovery.put(TEST_NODE, installations, 1500));
+        assertTrue(discovery.put(TEST_NODE,
+                Collections.<String, String>emptyMap(), 1600));
+
+        assertFalse(discovery.put("",
+                Collections.<String, String>emptyMap(), 0));
+    }
+
+    @Test
+    public void testIsVersion() {
+        assertTrue(BDSInstallationDiscovery.isVersion(TEST_VERSION));
+        assertFalse(BDSInstallationDiscovery.isVersion("Studio"));
+        assertFalse(BDSInstallationDiscovery.isVersion(null));
+    }
+}
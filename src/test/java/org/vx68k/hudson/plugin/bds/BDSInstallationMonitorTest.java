@@ -0,0 +1,89 @@
+/*
+ * BDSInstallationMonitorTest
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Collection of unit tests for {@link BDSInstallationMonitor}.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class BDSInstallationMonitorTest {
+
+    private static final String TEST_NAME = "RAD Studio XE8";
+
+    private File directory;
+    private File batchFile;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("monitor", "");
+        directory.delete();
+        directory.mkdir();
+        batchFile = new File(directory, "rsvars.bat");
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    private void writeBatchFile(String content) throws IOException {
+        OutputStream out = new FileOutputStream(batchFile);
+        try {
+            out.write(content.getBytes("ISO-8859-1"));
+        } finally {
+            out.close();
+        }
+    }
+
+    @Test
+    public void testMissingBatchFile() {
+        assertNotNull(BDSInstallationMonitor.checkBatchFile(TEST_NAME,
+                batchFile));
+    }
+
+    @Test
+    public void testMissingMsbuild() throws IOException {
+        writeBatchFile("@SET FrameworkDir=" + directory.getPath() + "\r\n");
+        assertNotNull(BDSInstallationMonitor.checkBatchFile(TEST_NAME,
+                batchFile));
+    }
+
+    @Test
+    public void testHealthy() throws IOException {
+        writeBatchFile("@SET FrameworkDir=" + directory.getPath() + "\r\n");
+        new File(directory, AbstractMsbuildBuilder.MSBUILD_FILE_NAME)
+                .createNewFile();
+        assertNull(BDSInstallationMonitor.checkBatchFile(TEST_NAME,
+                batchFile));
+    }
+}
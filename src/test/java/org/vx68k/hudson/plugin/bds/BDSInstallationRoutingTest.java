@@ -0,0 +1,78 @@
+/*
+ * BDSInstallationRoutingTest
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import java.util.Collections;
+import java.util.Map;
+import hudson.tools.ToolProperty;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Collection of unit tests for {@link BDSInstallationRouting}.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class BDSInstallationRoutingTest {
+
+    private static final String TEST_NAME = "RAD Studio XE8";
+    private static final String TEST_HOME =
+            "C:\\Program Files (x86)\\Embarcadero\\Studio\\16.0";
+
+    private final BDSInstallation installation = new BDSInstallation(
+            TEST_NAME, TEST_HOME, Collections.<ToolProperty<?>>emptyList());
+
+    @Test
+    public void testAvailable() {
+        Map<String, String> discovered =
+                Collections.singletonMap("16.0", TEST_HOME);
+        assertTrue(BDSInstallationRouting.isAvailable(installation,
+                discovered, null, false));
+    }
+
+    @Test
+    public void testMissing() {
+        Map<String, String> discovered =
+                Collections.singletonMap("17.0", TEST_HOME);
+        assertFalse(BDSInstallationRouting.isAvailable(installation,
+                discovered, null, false));
+        // A tool location on the node takes precedence.
+        assertTrue(BDSInstallationRouting.isAvailable(installation,
+                discovered, "D:\\Studio\\16.0", false));
+        // So does a successful check at the configured home.
+        assertTrue(BDSInstallationRouting.isAvailable(installation,
+                discovered, null, true));
+    }
+
+    @Test
+    public void testUnknown() {
+        assertTrue(BDSInstallationRouting.isAvailable(installation,
+                null, null, false));
+        BDSInstallation unversioned = new BDSInstallation(TEST_NAME,
+                "C:\\RAD", Collections.<ToolProperty<?>>emptyList());
+        assertTrue(BDSInstallationRouting.isAvailable(unversioned,
+                Collections.<String, String>emptyMap(), null, false));
+    }
+
+    @Test
+    public void testLabelName() {
+        assertEquals("bds-16.0", BDSInstallationRouting.getLabelName("16.0"));
+    }
+}
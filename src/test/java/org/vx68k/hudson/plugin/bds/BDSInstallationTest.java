@@ -19,6 +19,7 @@
 package org.vx68k.hudson.plugin.bds;
 
 import java.util.Collections;
+import java.util.Map;
 import hudson.tools.ToolProperty;
 import org.junit.After;
 import org.junit.Before;
@@ -53,4 +54,29 @@ public class BDSInstallationTest {
         assertEquals(TEST_HOME, bds.getHome());
         assertTrue(bds.getProperties().isEmpty());
     }
+
+    @Test
+    public void testIndex() {
+        BDSInstallation first = new BDSInstallation(
+                TEST_NAME, TEST_HOME,
+                Collections.<ToolProperty<?>>emptyList());
+        BDSInstallation second = new BDSInstallation(
+                TEST_NAME, "C:\\", Collections.<ToolProperty<?>>emptyList());
+        Map<String, BDSInstallation> index = BDSInstallation.index(
+                new BDSInstallation[] {first, second});
+        assertEquals(1, index.size());
+        assertSame(first, index.get(TEST_NAME));
+        assertNull(index.get("RAD Studio XE2"));
+    }
+
+    @Test
+    public void testVersion() {
+        BDSInstallation bds = new BDSInstallation(TEST_NAME,
+                "C:\\Program Files (x86)\\Embarcadero\\Studio\\17.0\\",
+                Collections.<ToolProperty<?>>emptyList());
+        assertEquals("17.0", bds.getVersion());
+        bds = new BDSInstallation(TEST_NAME, TEST_HOME,
+                Collections.<ToolProperty<?>>emptyList());
+        assertNull(bds.getVersion());
+    }
 }
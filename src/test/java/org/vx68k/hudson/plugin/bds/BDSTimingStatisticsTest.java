@@ -0,0 +1,64 @@
+/*
+ * BDSTimingStatisticsTest
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Collection of unit tests for {@link BDSTimingStatistics}.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class BDSTimingStatisticsTest {
+
+    @Test
+    public void testHistogram() {
+        BDSTimingStatistics.Histogram histogram =
+                new BDSTimingStatistics.Histogram();
+        histogram.add(0);
+        histogram.add(10);
+        histogram.add(99);
+        histogram.add(1000000);
+        long[] counts = histogram.getCounts();
+        assertEquals(BDSTimingStatistics.getBucketLabels().length,
+                counts.length);
+        assertEquals(1, counts[0]);
+        assertEquals(2, counts[1]);
+        assertEquals(1, counts[counts.length - 1]);
+    }
+
+    @Test
+    public void testAdd() {
+        BDSTimingStatistics statistics = new BDSTimingStatistics();
+        MsbuildTimingAction.Step step =
+                new MsbuildTimingAction.Step("Project1.dproj", "windows");
+        step.record("msbuild", System.nanoTime());
+        statistics.add("RAD Studio XE", step);
+
+        Map<String, Map<String, BDSTimingStatistics.Histogram>> nodes =
+                statistics.get("RAD Studio XE");
+        assertEquals(1, nodes.size());
+        assertEquals(1, nodes.get("windows").get("msbuild").getCounts()[0]);
+        assertTrue(statistics.get("RAD Studio XE2").isEmpty());
+        assertTrue(statistics.get(null).isEmpty());
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * BDSUtilitiesTest
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import static org.junit.Assert.*;
+
+/**
+ * Collection of unit tests for {@link BDSUtilities}.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class BDSUtilitiesTest {
+
+    private static final String TEST_HOME =
+            "C:\\Program Files (x86)\\Embarcadero\\Studio\\17.0";
+
+    private static Map<String, String> read(String batch, String encoding)
+            throws IOException {
+        return BDSUtilities.readVariables(
+                new ByteArrayInputStream(batch.getBytes(encoding)), encoding);
+    }
+
+    @Test
+    public void testSetCommands() throws IOException {
+        Map<String, String> variables = read(
+                "@SET BDS=" + TEST_HOME + "\r\n"
+                + "@SET BDSINCLUDE=" + TEST_HOME + "\\include\r\n"
+                + "  set FrameworkDir=C:\\Windows\\Microsoft.NET\\Framework\\v3.5\r\n"
+                + "@SET PATH=%FrameworkDir%;%PATH%\r\n"
+                + "@SET LANGDIR=EN\r\n", "ISO-8859-1");
+        assertEquals(3, variables.size());
+        assertEquals(TEST_HOME, variables.get("BDS"));
+        assertEquals(TEST_HOME + "\\include", variables.get("bdsinclude"));
+        assertEquals("C:\\Windows\\Microsoft.NET\\Framework\\v3.5",
+                variables.get("FrameworkDir"));
+    }
+
+    @Test
+    public void testOtherCommands() throws IOException {
+        Map<String, String> variables = read(
+                "@echo off\n"
+                + "setlocal\n"
+                + "rem set BDS=C:\\\n"
+                + "set CG_BOOST_ROOT\n"
+                + "set BDS=" + TEST_HOME + "\n", "ISO-8859-1");
+        assertEquals(TEST_HOME, variables.get("BDS"));
+        assertFalse(variables.containsKey("CG_BOOST_ROOT"));
+    }
+
+    @Test
+    public void testQuotedSetCommand() throws IOException {
+        Map<String, String> variables = read(
+                "@set \"BDS=" + TEST_HOME + "\" trailing\n", "ISO-8859-1");
+        assertEquals(TEST_HOME, variables.get("BDS"));
+    }
+
+    @Test
+    public void testReferences() throws IOException {
+        Map<String, String> variables = read(
+                "@SET BDS=" + TEST_HOME + "\n"
+                + "@SET BDSBIN=%BDS%\\bin\n"
+                + "@SET BDSLIB=%BDS%\\lib;%LIB%;100%%\n", "ISO-8859-1");
+        assertEquals(TEST_HOME + "\\bin", variables.get("BDSBIN"));
+        assertEquals(TEST_HOME + "\\lib;%LIB%;100%", variables.get("BDSLIB"));
+    }
+
+    @Test
+    public void testIncludeFallback() throws IOException {
+        Map<String, String> variables = read(
+                "@SET BDS=" + TEST_HOME + "\n", "ISO-8859-1");
+        assertEquals(TEST_HOME + "\\include", variables.get("BDSINCLUDE"));
+    }
+
+    @Test
+    public void testEncoding() throws IOException {
+        String commonDir = "C:\\Users\\\u30e6\u30fc\u30b6\u30fc\\Documents";
+        Map<String, String> variables = read(
+                "@SET BDSCOMMONDIR=" + commonDir + "\n", "MS932");
+        assertEquals(commonDir, variables.get("BDSCOMMONDIR"));
+    }
+
+    @Test
+    public void testLongFile() throws IOException {
+        StringBuilder batch = new StringBuilder();
+        for (int i = 0; i != 1000; i += 1) {
+            batch.append("@SET PATH=C:\\Windows;%PATH%\r\n");
+        }
+        StringBuilder longValue = new StringBuilder();
+        for (int i = 0; i != 5000; i += 1) {
+            longValue.append('x');
+        }
+        batch.append("@SET BDSLIB=").append(longValue).append("\r\n");
+        batch.append("@SET BDS=").append(TEST_HOME);
+        Map<String, String> variables = read(batch.toString(), "ISO-8859-1");
+        assertEquals(longValue.toString(), variables.get("BDSLIB"));
+        assertEquals(TEST_HOME, variables.get("BDS"));
+    }
+
+    @Test
+    public void testCodePageEncoding() {
+        assertEquals("IBM437", BDSUtilities.getCodePageEncoding("437"));
+        assertEquals("windows-31j", BDSUtilities.getCodePageEncoding("932"));
+        assertEquals("", BDSUtilities.getCodePageEncoding("0"));
+        assertEquals("", BDSUtilities.getCodePageEncoding(null));
+    }
+
+    private static File write(String content) throws IOException {
+        File file = File.createTempFile("test", ".xml");
+        OutputStream stream = new FileOutputStream(file);
+        try {
+            stream.write(content.getBytes("UTF-8"));
+        } finally {
+            stream.close();
+        }
+        return file;
+    }
+
+    @Test
+    public void testExternalEntities() throws IOException {
+        File secret = write("secret");
+        File project = write("<?xml version=\"1.0\"?>\n"
+                + "<!DOCTYPE Project SYSTEM \"http://example.invalid/a.dtd\" [\n"
+                + "  <!ENTITY secret SYSTEM \"" + secret.toURI() + "\">\n"
+                + "]>\n"
+                + "<Project>&secret;</Project>\n");
+        try {
+            Document document = BDSUtilities.parseXml(project);
+            assertFalse(document.getDocumentElement().getTextContent()
+                    .contains("secret"));
+        } finally {
+            project.delete();
+            secret.delete();
+        }
+    }
+
+    @Test
+    public void testVariablesReader()
+            throws IOException, InterruptedException {
+        File batch = write("@SET BDS=" + TEST_HOME + "\r\n");
+        try {
+            BDSUtilities.BatchVariables read =
+                    BDSUtilities.getVariablesReader(-1, -1, true)
+                            .invoke(batch, null);
+            assertEquals(batch.length(), read.getLength());
+            assertEquals(TEST_HOME, read.getVariables().get("BDS"));
+            // The batch file is not parsed again while unchanged.
+            read = BDSUtilities.getVariablesReader(read.getLength(),
+                    read.getLastModified(), true).invoke(batch, null);
+            assertNull(read.getVariables());
+            read = BDSUtilities.getVariablesReader(-1, -1, false)
+                    .invoke(batch, null);
+            assertNull(read.getVariables());
+        } finally {
+            batch.delete();
+        }
+        assertNull(BDSUtilities.getVariablesReader(-1, -1, true)
+                .invoke(batch, null));
+    }
+}
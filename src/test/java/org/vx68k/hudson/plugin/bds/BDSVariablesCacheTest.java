@@ -0,0 +1,90 @@
+/*
+ * BDSVariablesCacheTest
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import java.util.Collections;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Collection of unit tests for {@link BDSVariablesCache}.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class BDSVariablesCacheTest {
+
+    private static final String TEST_NODE = "windows";
+    private static final String TEST_PATH =
+            "C:\\Program Files\\Embarcadero\\Studio\\14.0\\bin\\rsvars.bat";
+
+    private BDSVariablesCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new BDSVariablesCache();
+    }
+
+    @Test
+    public void testHit() {
+        cache.put(TEST_NODE, TEST_PATH, 100, 1000,
+                Collections.singletonMap("BDS", "C:\\BDS"));
+        Map<String, String> variables =
+                cache.get(TEST_NODE, TEST_PATH, 100, 1000);
+        assertNotNull(variables);
+        assertEquals("C:\\BDS", variables.get("bds"));
+    }
+
+    @Test
+    public void testEntry() {
+        assertNull(cache.getEntry(TEST_NODE, TEST_PATH));
+        cache.put(TEST_NODE, TEST_PATH, 100, 1000,
+                Collections.singletonMap("BDS", "C:\\BDS"));
+        BDSVariablesCache.Entry entry = cache.getEntry(TEST_NODE, TEST_PATH);
+        assertEquals(100, entry.getLength());
+        assertEquals(1000, entry.getLastModified());
+        assertEquals("C:\\BDS", entry.getVariables().get("bds"));
+    }
+
+    @Test
+    public void testStale() {
+        cache.put(TEST_NODE, TEST_PATH, 100, 1000,
+                Collections.singletonMap("BDS", "C:\\BDS"));
+        assertNull(cache.get(TEST_NODE, TEST_PATH, 100, 2000));
+        // The stale entry must have been removed.
+        assertNull(cache.get(TEST_NODE, TEST_PATH, 100, 1000));
+    }
+
+    @Test
+    public void testOtherNode() {
+        cache.put(TEST_NODE, TEST_PATH, 100, 1000,
+                Collections.singletonMap("BDS", "C:\\BDS"));
+        assertNull(cache.get("", TEST_PATH, 100, 1000));
+    }
+
+    @Test
+    public void testClear() {
+        cache.put(TEST_NODE, TEST_PATH, 100, 1000,
+                Collections.singletonMap("BDS", "C:\\BDS"));
+        cache.clear();
+        assertNull(cache.get(TEST_NODE, TEST_PATH, 100, 1000));
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * GroupProjectParserTest
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Collection of unit tests for {@link GroupProjectParser}.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class GroupProjectParserTest {
+
+    private static final String TEST_GROUP =
+            "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+            + "<Project xmlns=\"http://schemas.microsoft.com/developer/msbuild/2003\">\n"
+            + "  <ItemGroup>\n"
+            + "    <Projects Include=\"Package1.dproj\">\n"
+            + "      <Dependencies/>\n"
+            + "    </Projects>\n"
+            + "    <Projects Include=\"Package2.dproj\">\n"
+            + "      <Dependencies>Package1.dproj</Dependencies>\n"
+            + "    </Projects>\n"
+            + "    <Projects Include=\"Project1.dproj\">\n"
+            + "      <Dependencies>Package1.dproj;Package2.dproj</Dependencies>\n"
+            + "    </Projects>\n"
+            + "  </ItemGroup>\n"
+            + "</Project>\n";
+
+    private File group;
+
+    @Before
+    public void setUp() throws IOException {
+        group = File.createTempFile("test",
+                GroupProjectParser.GROUP_PROJECT_EXTENSION);
+        OutputStream stream = new FileOutputStream(group);
+        try {
+            stream.write(TEST_GROUP.getBytes("UTF-8"));
+        } finally {
+            stream.close();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        group.delete();
+    }
+
+    @Test
+    public void testIsGroupProject() {
+        assertTrue(GroupProjectParser.isGroupProject("Group1.groupproj"));
+        assertTrue(GroupProjectParser.isGroupProject("GROUP1.GROUPPROJ"));
+        assertFalse(GroupProjectParser.isGroupProject("Project1.dproj"));
+    }
+
+    @Test
+    public void testParse() throws IOException {
+        File directory = group.getCanonicalFile().getParentFile();
+        String package1 = new File(directory, "Package1.dproj").getPath();
+        String package2 = new File(directory, "Package2.dproj").getPath();
+        String project1 = new File(directory, "Project1.dproj").getPath();
+
+        Map<String, List<String>> projects = GroupProjectParser.parse(group);
+        assertEquals(3, projects.size());
+        assertEquals(package1,
+                new ArrayList<String>(projects.keySet()).get(0));
+        assertTrue(projects.get(package1).isEmpty());
+        assertEquals(1, projects.get(package2).size());
+        assertEquals(package1, projects.get(package2).get(0));
+        assertEquals(2, projects.get(project1).size());
+        assertEquals(package2, projects.get(project1).get(1));
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * MsbuildDiagnosticParserTest
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import org.junit.Test;
+import org.vx68k.hudson.plugin.bds.MsbuildDiagnosticsAction.Diagnostic;
+import org.vx68k.hudson.plugin.bds.MsbuildDiagnosticsAction.Severity;
+import static org.junit.Assert.*;
+
+/**
+ * Collection of unit tests for {@link MsbuildDiagnosticParser}.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class MsbuildDiagnosticParserTest {
+
+    @Test
+    public void testError() {
+        Diagnostic diagnostic = MsbuildDiagnosticParser.parse(
+                "C:\\src\\Unit1.pas(12): error E2003: Undeclared identifier:"
+                + " 'Foo' [C:\\src\\Project1.dproj]");
+        assertNotNull(diagnostic);
+        assertEquals(Severity.ERROR, diagnostic.getSeverity());
+        assertEquals("C:\\src\\Unit1.pas", diagnostic.getFile());
+        assertEquals(12, diagnostic.getLine());
+        assertEquals("E2003", diagnostic.getCode());
+        assertEquals("Undeclared identifier: 'Foo'", diagnostic.getMessage());
+    }
+
+    @Test
+    public void testHint() {
+        Diagnostic diagnostic = MsbuildDiagnosticParser.parse(
+                "  Unit1.pas(30,5): hint warning H2164: Variable 'I' is"
+                + " declared but never used");
+        assertNotNull(diagnostic);
+        assertEquals(Severity.HINT, diagnostic.getSeverity());
+        assertEquals(30, diagnostic.getLine());
+        assertEquals("H2164", diagnostic.getCode());
+    }
+
+    @Test
+    public void testWarning() {
+        Diagnostic diagnostic = MsbuildDiagnosticParser.parse(
+                "Unit2.pas(8): warning W1000: Symbol 'X' is deprecated");
+        assertNotNull(diagnostic);
+        assertEquals(Severity.WARNING, diagnostic.getSeverity());
+    }
+
+    @Test
+    public void testMsbuildError() {
+        Diagnostic diagnostic = MsbuildDiagnosticParser.parse(
+                "MSBUILD : error MSB1009: Project file does not exist.");
+        assertNotNull(diagnostic);
+        assertEquals(Severity.ERROR, diagnostic.getSeverity());
+        assertEquals("MSBUILD", diagnostic.getFile());
+        assertEquals(0, diagnostic.getLine());
+        assertEquals("MSB1009", diagnostic.getCode());
+    }
+
+    @Test
+    public void testOther() {
+        assertNull(MsbuildDiagnosticParser.parse(
+                "Embarcadero Delphi for Win32 compiler version 27.0"));
+        assertNull(MsbuildDiagnosticParser.parse("    0 Error(s)"));
+        assertNull(MsbuildDiagnosticParser.parse(
+                "  Copying file from \"error.txt\" to \"out\\error.txt\"."));
+    }
+
+    @Test
+    public void testDuplicates() {
+        MsbuildDiagnosticsAction action = new MsbuildDiagnosticsAction();
+        String line = "Unit2.pas(8): warning W1000: Symbol 'X' is deprecated";
+        action.add(MsbuildDiagnosticParser.parse(line));
+        action.add(MsbuildDiagnosticParser.parse(line));
+        assertEquals(1, action.getWarningCount());
+        assertEquals(1, action.getDiagnostics().size());
+    }
+}
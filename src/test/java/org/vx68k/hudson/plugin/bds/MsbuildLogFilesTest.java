@@ -0,0 +1,48 @@
+/*
+ * MsbuildLogFilesTest
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Collection of unit tests for {@link MsbuildLogFiles}.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class MsbuildLogFilesTest {
+
+    @Test
+    public void testLogFileName() {
+        assertEquals("msbuild.log", MsbuildLogFiles.getLogFileName(null));
+        assertEquals("packages_Core.dproj.log",
+                MsbuildLogFiles.getLogFileName("packages\\Core.dproj"));
+        assertEquals("C__src_Project_1.dproj.log",
+                MsbuildLogFiles.getLogFileName("C:\\src\\Project 1.dproj"));
+    }
+
+    @Test
+    public void testOptions() {
+        String[] options = MsbuildLogFiles.getOptions("Project1.dproj");
+        assertEquals("/flp:LogFile=.msbuild-logs\\Project1.dproj.log"
+                + ";Verbosity=detailed;Encoding=UTF-8",
+                options[options.length - 1]);
+    }
+}
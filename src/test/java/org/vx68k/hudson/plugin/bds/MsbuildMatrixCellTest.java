@@ -0,0 +1,82 @@
+/*
+ * MsbuildMatrixCellTest
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.vx68k.hudson.plugin.bds;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Collection of unit tests for {@link MsbuildMatrixCell}.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class MsbuildMatrixCellTest {
+
+    @Test
+    public void testExpand() {
+        assertTrue(MsbuildMatrixCell.expand(null, " ").isEmpty());
+
+        List<MsbuildMatrixCell> cells =
+                MsbuildMatrixCell.expand("Win32, Win64", "Debug Release");
+        assertEquals(4, cells.size());
+        assertEquals("Win32 Debug", cells.get(0).getName());
+        assertEquals("Win32 Release", cells.get(1).getName());
+        assertEquals("Win64 Debug", cells.get(2).getName());
+
+        cells = MsbuildMatrixCell.expand(null, "Release");
+        assertEquals(1, cells.size());
+        assertNull(cells.get(0).getPlatform());
+        assertEquals("Release", cells.get(0).getConfiguration());
+    }
+
+    @Test
+    public void testLabel() {
+        MsbuildMatrixCell cell = new MsbuildMatrixCell("Win64", "Debug");
+        String label = cell.getLabel("src\\App.dproj");
+        assertEquals("src\\App.dproj|Win64|Debug", label);
+        assertEquals("src\\App.dproj",
+                MsbuildMatrixCell.getProjectFile(label));
+        assertEquals("App.dproj", MsbuildMatrixCell.getProjectFile(
+                "App.dproj"));
+    }
+
+    @Test
+    public void testGetOptions() {
+        assertEquals(Arrays.asList("/p:Platform=Win64", "/p:Config=Debug",
+                "/p:DCC_DcuOutput=.\\Win64\\Debug",
+                "/p:DCC_BplOutput=C:\\Common\\Bpl\\Win64\\Debug",
+                "/p:DCC_DcpOutput=C:\\Common\\Dcp\\Win64\\Debug"),
+                new MsbuildMatrixCell("Win64", "Debug").getOptions(
+                        "C:\\Common"));
+        assertEquals(Arrays.asList("/p:Config=Release",
+                "/p:DCC_DcuOutput=.\\Release",
+                "/p:DCC_BplOutput=.\\Bpl\\Release",
+                "/p:DCC_DcpOutput=.\\Dcp\\Release"),
+                new MsbuildMatrixCell(null, "Release").getOptions(null));
+        assertEquals(Arrays.asList("/p:Platform=Win64", "/p:Config=Debug",
+                "/p:DCC_DcuOutput=.\\Win64\\Debug",
+                "/p:DCC_DcpOutput=C:\\Common\\Dcp\\Win64\\Debug"),
+                new MsbuildMatrixCell("Win64", "Debug").getOptions(
+                        "C:\\Common",
+                        Collections.singleton("DCC_BPLOUTPUT")));
+    }
+}
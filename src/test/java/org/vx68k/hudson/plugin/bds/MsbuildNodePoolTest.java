@@ -0,0 +1,77 @@
+/*
+ * MsbuildNodePoolTest
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import hudson.EnvVars;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Collection of unit tests for {@link MsbuildNodePool}.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class MsbuildNodePoolTest {
+
+    private static final String TEST_NODE = "windows";
+    private static final String TEST_POOL = "RAD Studio XE5";
+
+    private MsbuildNodePool pool;
+
+    @Before
+    public void setUp() {
+        pool = new MsbuildNodePool();
+    }
+
+    @Test
+    public void testAcquire() {
+        EnvVars env = new EnvVars();
+        env.put("BUILD_ID", "2015-01-01_00-00-00");
+        pool.acquire(TEST_NODE, TEST_POOL, 0, env);
+        assertEquals(TEST_POOL, env.get(MsbuildNodePool.POOL_VARIABLE));
+        assertEquals(MsbuildNodePool.REUSED_BUILD_ID, env.get("BUILD_ID"));
+        assertEquals("2015-01-01_00-00-00",
+                env.get(MsbuildNodePool.BUILD_ID_VARIABLE));
+    }
+
+    @Test
+    public void testInUse() {
+        pool.acquire(TEST_NODE, TEST_POOL, 1, new EnvVars());
+        // A pool in use must not be reaped however long it has been.
+        pool.reap(Long.MAX_VALUE);
+    }
+
+    @Test
+    public void testReleased() {
+        String key = pool.acquire(TEST_NODE, TEST_POOL, 1, new EnvVars());
+        pool.release(key);
+        // A pool must not be reaped before its idle timeout.
+        pool.reap(System.currentTimeMillis());
+    }
+
+    @Test
+    public void testDiscardInUse() throws Exception {
+        String key = pool.acquire(TEST_NODE, TEST_POOL, 1, new EnvVars());
+        pool.acquire(TEST_NODE, TEST_POOL, 1, new EnvVars());
+        // The worker nodes must not be killed while another step uses them.
+        pool.discard(key, null);
+    }
+}
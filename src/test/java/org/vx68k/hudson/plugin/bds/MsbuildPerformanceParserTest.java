@@ -0,0 +1,80 @@
+/*
+ * MsbuildPerformanceParserTest
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+import org.junit.Test;
+import org.vx68k.hudson.plugin.bds.MsbuildPerformanceAction.Item;
+import org.vx68k.hudson.plugin.bds.MsbuildPerformanceAction.Kind;
+import static org.junit.Assert.*;
+
+/**
+ * Collection of unit tests for {@link MsbuildPerformanceParser}.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class MsbuildPerformanceParserTest {
+
+    private static final String[] TEST_OUTPUT = {
+        "Build succeeded.",
+        "",
+        "Target Performance Summary:",
+        "        0 ms  _CheckForInvalidConfigurationAndPlatform   1 calls",
+        "      120 ms  _PasCoreCompile                            2 calls",
+        "",
+        "Task Performance Summary:",
+        "      110 ms  DCC                                        2 calls",
+        "",
+        "Time Elapsed 00:00:01.23",
+        "      999 ms  NotInSummary                               1 calls",
+    };
+
+    @Test
+    public void testParse() {
+        MsbuildPerformanceAction action = new MsbuildPerformanceAction();
+        MsbuildPerformanceParser parser = new MsbuildPerformanceParser(
+                new ByteArrayOutputStream(), Charset.forName("UTF-8"),
+                action);
+        for (String line : TEST_OUTPUT) {
+            parser.parse(line);
+        }
+        parser.parse("      30 ms  _PasCoreCompile     1 calls");
+
+        List<Item> targets = action.getItems(Kind.TARGET.name());
+        assertEquals(2, targets.size());
+        assertEquals("_PasCoreCompile", targets.get(0).getName());
+        assertEquals(120, targets.get(0).getDuration());
+        assertEquals(110, action.getDuration(Kind.TASK, "DCC"));
+        assertEquals(0, action.getDuration(Kind.TASK, "NotInSummary"));
+        assertTrue(action.getItems(Kind.PROJECT.name()).isEmpty());
+    }
+
+    @Test
+    public void testAggregate() {
+        MsbuildPerformanceAction action = new MsbuildPerformanceAction();
+        action.add(Kind.TARGET, "Build", 100, 1);
+        action.add(Kind.TARGET, "Build", 50, 2);
+        Item item = action.getItems(Kind.TARGET.name()).get(0);
+        assertEquals(150, item.getDuration());
+        assertEquals(3, item.getCalls());
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * MsbuildProcessTreeTest
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import java.util.concurrent.TimeUnit;
+import hudson.EnvVars;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Collection of unit tests for {@link MsbuildProcessTree}.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class MsbuildProcessTreeTest {
+
+    @Test
+    public void testCookie() {
+        EnvVars env1 = new EnvVars();
+        EnvVars env2 = new EnvVars();
+        new MsbuildProcessTree(null, env1);
+        new MsbuildProcessTree(null, env2);
+        assertNotNull(env1.get(MsbuildProcessTree.STEP_VARIABLE));
+        assertFalse(env1.get(MsbuildProcessTree.STEP_VARIABLE).equals(
+                env2.get(MsbuildProcessTree.STEP_VARIABLE)));
+    }
+
+    @Test
+    public void testTimeout() throws InterruptedException {
+        MsbuildProcessTree tree = new MsbuildProcessTree(null, new EnvVars());
+        tree.startTimeout(10, TimeUnit.MILLISECONDS);
+        try {
+            Thread.sleep(10000);
+            fail();
+        } catch (InterruptedException exception) {
+            assertTrue(tree.isTimedOut());
+        } finally {
+            tree.close();
+        }
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+
+    @Test
+    public void testClosed() throws InterruptedException {
+        MsbuildProcessTree tree = new MsbuildProcessTree(null, new EnvVars());
+        tree.startTimeout(10, TimeUnit.MILLISECONDS);
+        tree.close();
+        Thread.sleep(50);
+        assertFalse(tree.isTimedOut());
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * ProjectFingerprintsTest
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Collection of unit tests for {@link ProjectFingerprints}.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class ProjectFingerprintsTest {
+
+    private static final String TEST_PROJECT =
+            "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+            + "<Project xmlns=\"http://schemas.microsoft.com/developer/msbuild/2003\">\n"
+            + "  <ItemGroup>\n"
+            + "    <DelphiCompile Include=\"Project1.dpr\">\n"
+            + "      <MainSource>MainSource</MainSource>\n"
+            + "    </DelphiCompile>\n"
+            + "    <DCCReference Include=\"Unit1.pas\">\n"
+            + "      <Form>Form1</Form>\n"
+            + "    </DCCReference>\n"
+            + "    <DCCReference Include=\"Missing.pas\"/>\n"
+            + "    <DCCReference Include=\"$(LibRoot)\\Unit2.pas\"/>\n"
+            + "  </ItemGroup>\n"
+            + "</Project>\n";
+
+    private File directory;
+
+    private void write(String name, String content) throws IOException {
+        OutputStream stream = new FileOutputStream(new File(directory, name));
+        try {
+            stream.write(content.getBytes("UTF-8"));
+        } finally {
+            stream.close();
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("test", "").getCanonicalFile();
+        directory.delete();
+        directory.mkdir();
+        write("Project1.dproj", TEST_PROJECT);
+        write("Project1.dpr", "program Project1;");
+        write("Project1.res", "");
+        write("Unit1.pas", "unit Unit1;");
+        write("Unit1.dfm", "object Form1: TForm1");
+        write("Defines.inc", "{$DEFINE TEST}");
+        write("Other.txt", "");
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testInputFiles() throws IOException {
+        SortedSet<File> files = ProjectFingerprints.getInputFiles(
+                new File(directory, "Project1.dproj"));
+        assertEquals(6, files.size());
+        assertTrue(files.contains(new File(directory, "Unit1.dfm")));
+        assertTrue(files.contains(new File(directory, "Defines.inc")));
+        assertTrue(files.contains(new File(directory, "Project1.res")));
+        assertFalse(files.contains(new File(directory, "Other.txt")));
+    }
+
+    @Test
+    public void testReferencedVariables() throws IOException {
+        Map<String, String> env = new HashMap<String, String>();
+        env.put("LIBROOT", "C:\\Lib");
+        env.put("PATH", "C:\\Windows");
+        SortedMap<String, String> variables =
+                ProjectFingerprints.getReferencedVariables(
+                        new File(directory, "Project1.dproj"), env);
+        assertEquals(1, variables.size());
+        assertEquals("C:\\Lib", variables.get("LibRoot"));
+    }
+}
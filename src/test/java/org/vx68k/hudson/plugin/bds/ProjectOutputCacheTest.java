@@ -0,0 +1,249 @@
+/*
+ * ProjectOutputCacheTest
+ * Copyright (C) 2015 Nishimura Software Studio
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vx68k.hudson.plugin.bds;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Collection of unit tests for {@link ProjectOutputCache}.
+ *
+ * @author Kaz Nishimura
+ * @since 4.0
+ */
+public class ProjectOutputCacheTest {
+
+    private static final String TEST_PROJECT =
+            "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+            + "<Project xmlns=\"http://schemas.microsoft.com/developer/msbuild/2003\">\n"
+            + "  <PropertyGroup>\n"
+            + "    <Config Condition=\"'$(Config)'==''\">Debug</Config>\n"
+            + "    <Platform Condition=\" '$(Platform)' == '' \">Win32</Platform>\n"
+            + "  </PropertyGroup>\n"
+            + "  <PropertyGroup>\n"
+            + "    <DCC_DcuOutput>.\\$(Platform)\\$(Config)</DCC_DcuOutput>\n"
+            + "    <DCC_BplOutput>.\\Bpl</DCC_BplOutput>\n"
+            + "    <DCC_DcpOutput>.\\Dcp</DCC_DcpOutput>\n"
+            + "  </PropertyGroup>\n"
+            + "  <ItemGroup>\n"
+            + "    <DelphiCompile Include=\"Package1.dpk\"/>\n"
+            + "    <DCCReference Include=\"Source\\Unit1.pas\"/>\n"
+            + "  </ItemGroup>\n"
+            + "</Project>\n";
+
+    private static final String DEFAULT_PACKAGE_PROJECT =
+            "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+            + "<Project xmlns=\"http://schemas.microsoft.com/developer/msbuild/2003\">\n"
+            + "  <PropertyGroup>\n"
+            + "    <Config Condition=\"'$(Config)'==''\">Debug</Config>\n"
+            + "    <Platform Condition=\"'$(Platform)'==''\">Win32</Platform>\n"
+            + "    <AppType>Package</AppType>\n"
+            + "  </PropertyGroup>\n"
+            + "  <PropertyGroup>\n"
+            + "    <DCC_DcuOutput>.\\$(Platform)\\$(Config)</DCC_DcuOutput>\n"
+            + "  </PropertyGroup>\n"
+            + "  <ItemGroup>\n"
+            + "    <DelphiCompile Include=\"Package2.dpk\"/>\n"
+            + "  </ItemGroup>\n"
+            + "</Project>\n";
+
+    private static final Map<String, String> NO_VARIABLES =
+            Collections.emptyMap();
+
+    private File directory;
+
+    private File write(String name, String content) throws IOException {
+        File file = new File(directory, name);
+        file.getParentFile().mkdirs();
+        OutputStream stream = new FileOutputStream(file);
+        try {
+            stream.write(content.getBytes("UTF-8"));
+        } finally {
+            stream.close();
+        }
+        return file;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("test", "").getCanonicalFile();
+        directory.delete();
+        directory.mkdir();
+        write("Package1.dproj", TEST_PROJECT);
+        write("Win64/Release/Unit1.dcu", "");
+        write("Win64/Release/Notes.txt", "");
+        write("Win64/Release/Unit2.dcu", "");
+        write("Win32/Debug/Unit1.dcu", "");
+    }
+
+    @After
+    public void tearDown() {
+        delete(directory);
+    }
+
+    @Test
+    public void testProperties() {
+        Map<String, String> properties = ProjectOutputCache.getProperties(
+                Arrays.asList("MSBuild.exe", "/t:Build",
+                        "/p:Config=Release;platform=Win64",
+                        "/property:DCC_Define=TEST", "Package1.dproj"));
+        assertEquals(3, properties.size());
+        assertEquals("Release", properties.get("Config"));
+        assertEquals("Win64", properties.get("Platform"));
+        assertEquals("TEST", properties.get("DCC_Define"));
+    }
+
+    @Test
+    public void testOutputFiles() throws IOException {
+        SortedSet<File> files = ProjectOutputCache.getOutputFiles(
+                new File(directory, "Package1.dproj"), directory,
+                ProjectOutputCache.getProperties(Collections.singletonList(
+                        "/p:Config=Release;Platform=Win64")),
+                NO_VARIABLES, 0);
+        assertEquals(1, files.size());
+        assertTrue(files.contains(new File(directory,
+                "Win64" + File.separator + "Release" + File.separator
+                + "Unit1.dcu")));
+    }
+
+    @Test
+    public void testOverriddenOutputFiles() throws IOException {
+        write("Bpl/Package1.bpl", "");
+        SortedSet<File> files = ProjectOutputCache.getOutputFiles(
+                new File(directory, "Package1.dproj"), directory,
+                ProjectOutputCache.getProperties(Collections.singletonList(
+                        "/p:DCC_BplOutput=" + directory + File.separator
+                        + "Bpl")),
+                NO_VARIABLES, 0);
+        assertEquals(2, files.size());
+        assertTrue(files.contains(new File(directory,
+                "Bpl" + File.separator + "Package1.bpl")));
+    }
+
+    @Test
+    public void testOldOutputFiles() throws IOException {
+        File unit = new File(directory, "Win32" + File.separator + "Debug"
+                + File.separator + "Unit1.dcu");
+        unit.setLastModified(1000000000000L);
+        SortedSet<File> files = ProjectOutputCache.getOutputFiles(
+                new File(directory, "Package1.dproj"), directory,
+                NO_VARIABLES, NO_VARIABLES, System.currentTimeMillis());
+        assertTrue(files.isEmpty());
+    }
+
+    @Test
+    public void testNumberedOutputFiles() throws IOException {
+        write("Bpl/Package1270.bpl", "");
+        write("Bpl/Package2270.bpl", "");
+        SortedSet<File> files = ProjectOutputCache.getOutputFiles(
+                new File(directory, "Package1.dproj"), directory,
+                ProjectOutputCache.getProperties(Collections.singletonList(
+                        "/p:DllSuffix=$(Auto);DCC_BplOutput=" + directory
+                        + File.separator + "Bpl")),
+                NO_VARIABLES, 0);
+        assertTrue(files.contains(new File(directory,
+                "Bpl" + File.separator + "Package1270.bpl")));
+        assertFalse(files.contains(new File(directory,
+                "Bpl" + File.separator + "Package2270.bpl")));
+    }
+
+    @Test
+    public void testDefaultPackageOutputFiles() throws IOException {
+        write("Package2.dproj", DEFAULT_PACKAGE_PROJECT);
+        write("Win32/Debug/Package2.dcu", "");
+        // The package and its compiled package would be left uncached.
+        assertNull(ProjectOutputCache.getOutputFiles(
+                new File(directory, "Package2.dproj"), directory,
+                NO_VARIABLES, NO_VARIABLES, 0));
+        assertNull(ProjectOutputCache.getOutputFiles(
+                new File(directory, "Package2.dproj"), directory,
+                NO_VARIABLES, Collections.singletonMap("DCC_BplOutput",
+                        directory.getParent()), 0));
+    }
+
+    @Test
+    public void testEnvironmentOutputFiles() throws IOException {
+        Map<String, String> env = new HashMap<String, String>();
+        env.put("Config", "Release");
+        env.put("Platform", "Win64");
+        SortedSet<File> files = ProjectOutputCache.getOutputFiles(
+                new File(directory, "Package1.dproj"), directory,
+                NO_VARIABLES, env, 0);
+        assertEquals(1, files.size());
+        assertTrue(files.contains(new File(directory,
+                "Win64" + File.separator + "Release" + File.separator
+                + "Unit1.dcu")));
+    }
+
+    @Test
+    public void testUnresolvedOutputFiles() throws IOException {
+        Map<String, String> properties = ProjectOutputCache.getProperties(
+                Collections.singletonList(
+                        "/p:DCC_DcuOutput=$(OutputRoot)\\Win32\\Debug"));
+        assertNull(ProjectOutputCache.getOutputFiles(
+                new File(directory, "Package1.dproj"), directory,
+                properties, NO_VARIABLES, 0));
+        assertNull(ProjectOutputCache.getOutputFiles(
+                new File(directory, "Package1.dproj"), directory,
+                properties, Collections.singletonMap("OutputRoot",
+                        directory.getParent()), 0));
+
+        SortedSet<File> files = ProjectOutputCache.getOutputFiles(
+                new File(directory, "Package1.dproj"), directory,
+                properties, Collections.singletonMap("OutputRoot",
+                        directory.getPath()), 0);
+        assertEquals(1, files.size());
+    }
+
+    @Test
+    public void testPrune() throws IOException {
+        File cache = new File(directory, "cache");
+        long now = System.currentTimeMillis();
+        write("cache/old.zip", "").setLastModified(now - 200000);
+        write("cache/large.zip", "0123456789").setLastModified(now - 2000);
+        write("cache/new.zip", "01234").setLastModified(now - 1000);
+        write("cache/new.tmp", "0123456789");
+        assertEquals(2, ProjectOutputCache.prune(cache, 100000, 10));
+        assertTrue(new File(cache, "new.zip").exists());
+        assertTrue(new File(cache, "new.tmp").exists());
+        assertFalse(new File(cache, "large.zip").exists());
+        assertFalse(new File(cache, "old.zip").exists());
+    }
+}